@@ -0,0 +1,28 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class FetcherSettings {
+
+    private String userAgent = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+
+    private Duration connectTimeout = Duration.ofSeconds(10);
+
+    /** Время ожидания заголовков ответа. */
+    private Duration requestTimeout = Duration.ofSeconds(10);
+
+    /** Предельное время загрузки страницы вместе с телом. */
+    private Duration totalTimeout = Duration.ofSeconds(30);
+
+    /** Предел размера страницы после распаковки; остаток ответа не читается. */
+    private DataSize maxBodySize = DataSize.ofMegabytes(5);
+
+    /** Запрашивать HTTP/2; сервер без его поддержки отвечает по HTTP/1.1. */
+    private boolean http2 = true;
+}
@@ -0,0 +1,21 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "lemma-cache")
+public class LemmaCacheSettings {
+
+    /** Максимальное число словоформ в кэше; вытесняются самые редко используемые. */
+    private long maxSize = 200_000;
+
+    /** Если задано, словоформа вытесняется, когда к ней не обращались дольше этого времени. */
+    private Duration expireAfterAccess;
+}
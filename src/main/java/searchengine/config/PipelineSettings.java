@@ -0,0 +1,19 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class PipelineSettings {
+    private int parseThreads = 2;
+    private int lemmaThreads = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+    private int persistThreads = 2;
+    private int queueCapacity = 100;
+
+    /**
+     * Удалить колонку page.content старых версий после переноса HTML в page_content.
+     * По умолчанию колонка только очищается, удаление - отдельный явный шаг.
+     */
+    private boolean dropLegacyContent = false;
+}
@@ -0,0 +1,38 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class RateSettings {
+
+    /**
+     * Подстраивать число одновременных запросов и паузу к каждому сайту по
+     * задержке ответов и ошибкам; иначе остаются заданные concurrency и delay.
+     */
+    private boolean adaptive = true;
+
+    /** Наибольшее число одновременных запросов к сайту. */
+    private int maxConcurrency = 8;
+
+    /** Наименьшая пауза между запросами к сайту; Crawl-delay из robots.txt её увеличивает. */
+    private Duration minDelay = Duration.ofMillis(20);
+
+    /** Наибольшая пауза между запросами, до которой доходит замедление. */
+    private Duration maxDelay = Duration.ofSeconds(30);
+
+    /** На сколько сокращается пауза после каждого быстрого ответа. */
+    private Duration delayStep = Duration.ofMillis(10);
+
+    /** Во сколько раз задержка ответа должна превысить обычную, чтобы обход замедлился. */
+    private double latencyFactor = 2.0;
+
+    /** Сколько раз повторять запрос после ответа 429/503 или таймаута. */
+    private int maxRetries = 3;
+
+    /** Предел паузы, которую сайт может потребовать заголовком Retry-After. */
+    private Duration maxRetryAfter = Duration.ofMinutes(2);
+}
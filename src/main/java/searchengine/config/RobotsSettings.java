@@ -0,0 +1,23 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class RobotsSettings {
+
+    /** Читать robots.txt сайта: не запрашивать запрещённые разделы и соблюдать Crawl-delay. */
+    private boolean enabled = true;
+
+    /** Дополнять очередь обхода адресами из карт сайта (sitemap.xml). */
+    private boolean sitemaps = true;
+
+    /** Предел паузы Crawl-delay, которую сайт может потребовать в robots.txt. */
+    private Duration maxCrawlDelay = Duration.ofSeconds(10);
+
+    /** Наибольшее число файлов карт сайта, включая вложенные в индексы, читаемых за обход. */
+    private int maxSitemaps = 100;
+}
@@ -0,0 +1,23 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-cache")
+public class SearchCacheSettings {
+
+    /** Кэшировать ранжированные результаты поиска. */
+    private boolean enabled = true;
+
+    /** Оценочный объём памяти под кэш; при превышении вытесняются самые редко используемые запросы. */
+    private DataSize maxMemory = DataSize.ofMegabytes(64);
+
+    /** Сколько лучших результатов запроса хранится; более далёкие страницы выдачи ранжируются заново. */
+    private int maxResults = 1000;
+}
@@ -0,0 +1,19 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+
+    /** Держать поисковый индекс в памяти и отвечать на запросы без обращения к search_index. */
+    private boolean inMemoryIndex = false;
+
+    /** Каталог файлов сегментов индекса; пустое значение отключает сегменты. */
+    private String segmentsDir = "index-segments";
+}
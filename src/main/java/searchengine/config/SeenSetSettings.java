@@ -0,0 +1,19 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.util.unit.DataSize;
+
+@Getter
+@Setter
+public class SeenSetSettings {
+
+    /** Предельный объём множества посещённых адресов одного сайта. */
+    private DataSize maxMemory = DataSize.ofMegabytes(64);
+
+    /**
+     * По достижении предела заменять точную таблицу фильтром Блума; иначе
+     * новые адреса перестают приниматься в обход.
+     */
+    private boolean bloomFallback = true;
+}
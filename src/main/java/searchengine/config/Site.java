@@ -9,4 +9,8 @@ public class
 Site {
     private String url;
     private String name;
+    private Integer concurrency;
+    private Long delay;
+    private Integer maxDepth;
+    private Integer maxPages;
 }
@@ -13,4 +13,59 @@ import java.util.List;
 @ConfigurationProperties(prefix = "indexing-settings")
 public class SitesList {
     private List<Site> sites;
+
+    /** Общее число потоков загрузки страниц для всех сайтов. */
+    private int crawlerThreads = 64;
+
+    /**
+     * Число одновременных запросов к одному сайту, если для сайта не задано своё;
+     * при адаптивной скорости ({@link RateSettings}) - начальное.
+     */
+    private int concurrency = 2;
+
+    /** Пауза между запросами к одному сайту, мс; при адаптивной скорости - начальная. */
+    private long delay = 150;
+
+    /** Наибольшая глубина ссылок от главной страницы, если для сайта не задана своя; 0 - без ограничения. */
+    private int maxDepth = 0;
+
+    /** Наибольшее число страниц, запрашиваемых за один обход сайта; 0 - без ограничения. */
+    private int maxPages = 0;
+
+    /** Сколько строк индекса накапливать перед пакетной записью в БД. */
+    private int flushRows = 5000;
+
+    /** Каталог журналов обхода для продолжения прерванной индексации; пусто - не вести журнал. */
+    private String frontierDir = "crawl-frontier";
+
+    /** Множество посещённых адресов сайта: предел памяти и поведение при его достижении. */
+    private SeenSetSettings seenSet = new SeenSetSettings();
+
+    /** Подстройка скорости обхода каждого сайта. */
+    private RateSettings rate = new RateSettings();
+
+    /** Общий HTTP-клиент загрузки страниц. */
+    private FetcherSettings fetcher = new FetcherSettings();
+
+    /** Правила robots.txt и начальные адреса из карт сайта. */
+    private RobotsSettings robots = new RobotsSettings();
+
+    /** Потоки и размеры очередей стадий конвейера индексации. */
+    private PipelineSettings pipeline = new PipelineSettings();
+
+    public int getConcurrency(Site site) {
+        return site.getConcurrency() != null ? site.getConcurrency() : concurrency;
+    }
+
+    public long getDelay(Site site) {
+        return site.getDelay() != null ? site.getDelay() : delay;
+    }
+
+    public int getMaxDepth(Site site) {
+        return site.getMaxDepth() != null ? site.getMaxDepth() : maxDepth;
+    }
+
+    public int getMaxPages(Site site) {
+        return site.getMaxPages() != null ? site.getMaxPages() : maxPages;
+    }
 }
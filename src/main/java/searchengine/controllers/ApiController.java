@@ -4,9 +4,11 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import searchengine.dto.ApiResponse;
+import searchengine.dto.metrics.MetricsResponse;
 import searchengine.dto.search.SearchResponse;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.services.IndexingService;
+import searchengine.services.MetricsService;
 import searchengine.services.SearchService;
 import searchengine.services.StatisticsService;
 
@@ -18,15 +20,21 @@ public class ApiController {
     private final StatisticsService statisticsService;
     private final IndexingService indexingService;
     private final SearchService searchService;
+    private final MetricsService metricsService;
 
     @GetMapping("/statistics")
     public ResponseEntity<StatisticsResponse> statistics() {
         return ResponseEntity.ok(statisticsService.getStatistics());
     }
 
+    @GetMapping("/metrics")
+    public ResponseEntity<MetricsResponse> metrics() {
+        return ResponseEntity.ok(metricsService.getMetrics());
+    }
+
     @GetMapping("/startIndexing")
-    public ResponseEntity<ApiResponse> startIndexing() {
-        return ResponseEntity.ok(indexingService.startIndexing());
+    public ResponseEntity<ApiResponse> startIndexing(@RequestParam(defaultValue = "false") boolean incremental) {
+        return ResponseEntity.ok(indexingService.startIndexing(incremental));
     }
 
     @GetMapping("/stopIndexing")
@@ -35,6 +43,11 @@ public class ApiController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/resumeIndexing")
+    public ResponseEntity<ApiResponse> resumeIndexing() {
+        return ResponseEntity.ok(indexingService.resumeIndexing());
+    }
+
     @PostMapping("/indexPage")
     public ResponseEntity<ApiResponse> indexPage(@RequestParam String url) {
         return ResponseEntity.ok(indexingService.indexPage(url));
@@ -0,0 +1,13 @@
+package searchengine.dto.metrics;
+
+import lombok.Data;
+
+@Data
+public class CacheMetrics {
+    private long size;
+    private long hitCount;
+    private long missCount;
+    private double hitRate;
+    private long evictionCount;
+    private long memoryBytes;
+}
@@ -0,0 +1,24 @@
+package searchengine.dto.metrics;
+
+import lombok.Data;
+
+@Data
+public class CrawlMetrics {
+    private String site;
+    private int queueSize;
+    private int pages;
+    private long seenUrls;
+    private long duplicates;
+    private long overflow;
+    private long beyondDepth;
+    private long overBudget;
+    private long disallowed;
+    private long seenSetBytes;
+    private boolean seenSetApproximate;
+    private int concurrency;
+    private long delayMillis;
+    private long latencyMillis;
+    private double requestsPerSecond;
+    private long throttled;
+    private long retries;
+}
@@ -0,0 +1,13 @@
+package searchengine.dto.metrics;
+
+import lombok.Data;
+
+@Data
+public class IndexMetrics {
+    private boolean ready;
+    private int lemmas;
+    private long postings;
+    private long memoryBytes;
+    private int segments;
+    private long segmentBytes;
+}
@@ -0,0 +1,15 @@
+package searchengine.dto.metrics;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MetricsResponse {
+    private boolean result;
+    private List<StageMetrics> pipeline;
+    private List<CrawlMetrics> crawls;
+    private CacheMetrics lemmaCache;
+    private CacheMetrics searchCache;
+    private IndexMetrics invertedIndex;
+}
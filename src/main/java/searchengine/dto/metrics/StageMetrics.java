@@ -0,0 +1,14 @@
+package searchengine.dto.metrics;
+
+import lombok.Data;
+
+@Data
+public class StageMetrics {
+    private String name;
+    private int threads;
+    private int busyThreads;
+    private int queueSize;
+    private int queueCapacity;
+    private long processed;
+    private double throughput;
+}
@@ -7,7 +7,8 @@ import javax.persistence.*;
 
 
 @Entity
-@Table(name = "search_index")
+@Table(name = "search_index",
+       indexes = @Index(name = "idx_lemma_page_rank", columnList = "lemma_id, page_id, rank_value"))
 @Getter
 @Setter
 public class IndexEntity {
@@ -3,5 +3,7 @@ package searchengine.model;
 public enum IndexingStatus {
     INDEXING,
     INDEXED,
-    FAILED
-}
\ No newline at end of file
+    FAILED,
+    /** Поколение индекса, заменённое новым; его данные удаляются в фоне. */
+    RETIRED
+}
@@ -0,0 +1,25 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * HTML-код страницы, сжатый Deflate. Хранится отдельно от {@link PageEntity},
+ * чтобы выборки страниц не читали его, и загружается только для построения сниппета.
+ */
+@Entity
+@Table(name = "page_content")
+@Getter
+@Setter
+public class PageContentEntity {
+
+    @Id
+    @Column(name = "page_id")
+    private Integer pageId;
+
+    @Convert(converter = CompressedContentConverter.class)
+    @Column(name = "data", nullable = false, columnDefinition = "MEDIUMBLOB")
+    private String content;
+}
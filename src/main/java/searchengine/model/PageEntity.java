@@ -27,6 +27,25 @@ public class PageEntity {
     @Column(nullable = false)
     private Integer code;
 
-    @Column(nullable = false, columnDefinition = "MEDIUMTEXT")
-    private String content;
+    @Column(length = 512)
+    private String title;
+
+    /** Текст страницы без разметки; null у страниц, сохранённых до появления колонки. */
+    @Column(name = "plain_text", columnDefinition = "MEDIUMTEXT")
+    private String plainText;
+
+    /** Позиции слов plain_text по леммам в формате {@code LemmaPositions}. */
+    @Column(columnDefinition = "MEDIUMBLOB")
+    private byte[] positions;
+
+    /** Валидаторы ответа для условного запроса при повторном обходе. */
+    @Column(length = 255)
+    private String etag;
+
+    @Column(name = "last_modified", length = 64)
+    private String lastModified;
+
+    /** Первые 8 байт SHA-256 тела ответа; null у страниц, сохранённых до появления колонки. */
+    @Column(name = "content_hash")
+    private Long contentHash;
 }
\ No newline at end of file
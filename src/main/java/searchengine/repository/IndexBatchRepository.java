@@ -0,0 +1,215 @@
+package searchengine.repository;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+
+/**
+ * Пакетная запись лемм и поискового индекса через JDBC в обход Hibernate:
+ * при {@code GenerationType.IDENTITY} Hibernate не объединяет вставки в пакеты.
+ */
+@Repository
+@RequiredArgsConstructor
+public class IndexBatchRepository {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Добавляет леммы сайта или увеличивает их частоту одним многострочным запросом на каждые
+     * {@value #CHUNK_SIZE} строк. Строки сортируются, чтобы параллельные транзакции
+     * захватывали блокировки в одном порядке.
+     */
+    public void upsertLemmas(int siteId, Map<String, Integer> frequencies) {
+        List<String> lemmas = new ArrayList<>(frequencies.keySet());
+        Collections.sort(lemmas);
+
+        for (int from = 0; from < lemmas.size(); from += CHUNK_SIZE) {
+            List<String> chunk = lemmas.subList(from, Math.min(from + CHUNK_SIZE, lemmas.size()));
+            StringBuilder sql = new StringBuilder("INSERT INTO lemma (site_id, lemma, frequency) VALUES ");
+            Object[] args = new Object[chunk.size() * 3];
+
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+                args[i * 3] = siteId;
+                args[i * 3 + 1] = chunk.get(i);
+                args[i * 3 + 2] = frequencies.get(chunk.get(i));
+            }
+            sql.append(" ON DUPLICATE KEY UPDATE frequency = frequency + VALUES(frequency)");
+
+            jdbcTemplate.update(sql.toString(), args);
+        }
+    }
+
+    public Map<String, Integer> findAllLemmaIds(int siteId) {
+        Map<String, Integer> ids = new HashMap<>();
+        jdbcTemplate.query("SELECT id, lemma FROM lemma WHERE site_id = ?",
+                rs -> {
+                    ids.put(rs.getString("lemma"), rs.getInt("id"));
+                }, siteId);
+        return ids;
+    }
+
+    public Map<String, Integer> findLemmaIds(int siteId, Collection<String> lemmas) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> all = new ArrayList<>(lemmas);
+
+        for (int from = 0; from < all.size(); from += CHUNK_SIZE) {
+            List<String> chunk = all.subList(from, Math.min(from + CHUNK_SIZE, all.size()));
+            String placeholders = placeholders(chunk.size());
+            Object[] args = new Object[chunk.size() + 1];
+            args[0] = siteId;
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i + 1] = chunk.get(i);
+            }
+
+            jdbcTemplate.query("SELECT id, lemma FROM lemma WHERE site_id = ? AND lemma IN (" + placeholders + ")",
+                    rs -> {
+                        ids.put(rs.getString("lemma"), rs.getInt("id"));
+                    }, args);
+        }
+        return ids;
+    }
+
+    /**
+     * Вставляет строки индекса JDBC-пакетами. При {@code rewriteBatchedStatements=true}
+     * драйвер MySQL превращает каждый пакет в один многострочный INSERT.
+     */
+    public void insertIndexes(List<IndexRow> rows) {
+        jdbcTemplate.batchUpdate("INSERT INTO search_index (page_id, lemma_id, rank_value) VALUES (?, ?, ?)",
+                rows, CHUNK_SIZE, (ps, row) -> {
+                    ps.setInt(1, row.getPageId());
+                    ps.setInt(2, row.getLemmaId());
+                    ps.setFloat(3, row.getRank());
+                });
+    }
+
+    /**
+     * Находит страницы, содержащие все заданные леммы своего сайта, и суммирует их ранги
+     * одним запросом по всем сайтам. Леммы и страницы принадлежат одному сайту, поэтому
+     * сайт страницы определяется по id её лемм из запроса без соединения с таблицей lemma,
+     * и условие HAVING сравнивает количество найденных лемм с числом лемм этого сайта.
+     * Запрос читает только индекс (lemma_id, page_id, rank_value) таблицы search_index.
+     *
+     * @param lemmaIdsBySite id лемм запроса для каждого сайта
+     * @return суммарный ранг по id страницы
+     */
+    public Map<Integer, Float> sumRanksOfPagesWithAllLemmas(Map<Integer, Set<Integer>> lemmaIdsBySite) {
+        List<Object> lemmaIdArgs = new ArrayList<>();
+        List<Object> lemmaCountArgs = new ArrayList<>();
+        StringBuilder lemmaCounts = new StringBuilder("CASE");
+        for (Set<Integer> siteLemmaIds : lemmaIdsBySite.values()) {
+            if (siteLemmaIds.isEmpty()) {
+                continue;
+            }
+            lemmaIdArgs.addAll(siteLemmaIds);
+            lemmaCountArgs.addAll(siteLemmaIds);
+            lemmaCounts.append(" WHEN MIN(i.lemma_id) IN (").append(placeholders(siteLemmaIds.size()))
+                    .append(") THEN ").append(siteLemmaIds.size());
+        }
+        lemmaCounts.append(" END");
+
+        Map<Integer, Float> ranks = new HashMap<>();
+        if (lemmaIdArgs.isEmpty()) {
+            return ranks;
+        }
+        List<Object> args = new ArrayList<>(lemmaIdArgs);
+        args.addAll(lemmaCountArgs);
+        jdbcTemplate.query("SELECT i.page_id, SUM(i.rank_value) AS relevance FROM search_index i " +
+                        "WHERE i.lemma_id IN (" + placeholders(lemmaIdArgs.size()) + ") " +
+                        "GROUP BY i.page_id " +
+                        "HAVING COUNT(DISTINCT i.lemma_id) = " + lemmaCounts,
+                rs -> {
+                    ranks.put(rs.getInt("page_id"), rs.getFloat("relevance"));
+                }, args.toArray());
+        return ranks;
+    }
+
+    public void streamLemmas(LemmaRowHandler handler) {
+        jdbcTemplate.query(streaming("SELECT id, site_id, lemma FROM lemma"),
+                rs -> {
+                    handler.accept(rs.getInt("id"), rs.getInt("site_id"), rs.getString("lemma"));
+                });
+    }
+
+    public void countPagesBySite(PageCountHandler handler) {
+        jdbcTemplate.query("SELECT site_id, COUNT(*) AS pages, MAX(id) AS max_page_id FROM page GROUP BY site_id",
+                rs -> {
+                    handler.accept(rs.getInt("site_id"), rs.getInt("pages"), rs.getInt("max_page_id"));
+                });
+    }
+
+    /**
+     * Построчно читает id и пути страниц сайта по возрастанию id.
+     */
+    public void streamPages(int siteId, PageRowHandler handler) {
+        jdbcTemplate.query(streaming("SELECT id, path FROM page WHERE site_id = ? ORDER BY id", siteId),
+                rs -> {
+                    handler.accept(rs.getInt("id"), rs.getString("path"));
+                });
+    }
+
+    /**
+     * Построчно читает всю таблицу search_index, не загружая результат в память целиком.
+     */
+    public void streamIndex(IndexRowHandler handler) {
+        jdbcTemplate.query(streaming("SELECT lemma_id, page_id, rank_value FROM search_index"),
+                rs -> {
+                    handler.accept(rs.getInt("lemma_id"), rs.getInt("page_id"), rs.getFloat("rank_value"));
+                });
+    }
+
+    /**
+     * Драйвер MySQL отдаёт строки потоком только при fetchSize = Integer.MIN_VALUE.
+     */
+    private PreparedStatementCreator streaming(String sql, Object... parameters) {
+        return connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(Integer.MIN_VALUE);
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            return statement;
+        };
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    @FunctionalInterface
+    public interface LemmaRowHandler {
+        void accept(int lemmaId, int siteId, String lemma);
+    }
+
+    @FunctionalInterface
+    public interface PageCountHandler {
+        void accept(int siteId, int pages, int maxPageId);
+    }
+
+    @FunctionalInterface
+    public interface PageRowHandler {
+        void accept(int pageId, String path);
+    }
+
+    @FunctionalInterface
+    public interface IndexRowHandler {
+        void accept(int lemmaId, int pageId, float rank);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class IndexRow {
+        private final int pageId;
+        private final int lemmaId;
+        private final float rank;
+    }
+}
@@ -6,28 +6,20 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.IndexEntity;
-import searchengine.model.LemmaEntity;
-import searchengine.model.PageEntity;
-
-import java.util.List;
-import java.util.Set;
 
 @Repository
 public interface IndexRepository extends JpaRepository<IndexEntity, Integer> {
+    /** Уменьшает частоту лемм страницы перед удалением её строк индекса. */
+    @Modifying
+    @Query(value = "UPDATE lemma l JOIN search_index i ON i.lemma_id = l.id " +
+            "SET l.frequency = l.frequency - 1 WHERE i.page_id = :pageId", nativeQuery = true)
+    void decrementFrequenciesByPage(@Param("pageId") Integer pageId);
+
     @Modifying
-    @Query("DELETE FROM IndexEntity i WHERE i.page = :page")
-    void deleteByPage(@Param("page") PageEntity page);
+    @Query(value = "DELETE FROM search_index WHERE page_id = :pageId", nativeQuery = true)
+    void deleteByPageId(@Param("pageId") Integer pageId);
 
     @Modifying
     @Query(value = "DELETE FROM search_index WHERE page_id IN (SELECT id FROM page WHERE site_id = :siteId)", nativeQuery = true)
     void deleteBySite(@Param("siteId") Integer siteId);
-
-    @Query("SELECT DISTINCT i.page FROM IndexEntity i WHERE i.lemma = :lemma")
-    List<PageEntity> findPagesByLemma(@Param("lemma") LemmaEntity lemma);
-
-    @Query("SELECT DISTINCT i.page FROM IndexEntity i WHERE i.lemma = :lemma AND i.page IN :pages")
-    List<PageEntity> findPagesByLemmaAndPageIn(@Param("lemma") LemmaEntity lemma, @Param("pages") Set<PageEntity> pages);
-
-    @Query("SELECT SUM(i.rankValue) FROM IndexEntity i WHERE i.page = :page AND i.lemma IN :lemmas")
-    Double sumRankByPageAndLemmas(@Param("page") PageEntity page, @Param("lemmas") List<LemmaEntity> lemmas);
-}
\ No newline at end of file
+}
@@ -0,0 +1,231 @@
+package searchengine.repository;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Работа с таблицей page через JDBC: перенос HTML-кода из старой колонки
+ * page.content в page_content, заполнение заголовков, текста и позиций слов,
+ * состояние страниц для повторного обхода.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PageBatchRepository {
+
+    private static final String REPLACEMENT_PATH_PREFIX = "~replaces/";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public boolean hasLegacyContentColumn() {
+        Integer columns = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.columns " +
+                "WHERE table_schema = DATABASE() AND table_name = 'page' AND column_name = 'content'", Integer.class);
+        return columns != null && columns > 0;
+    }
+
+    public boolean isLegacyContentNullable() {
+        String nullable = jdbcTemplate.queryForObject("SELECT is_nullable FROM information_schema.columns " +
+                "WHERE table_schema = DATABASE() AND table_name = 'page' AND column_name = 'content'", String.class);
+        return "YES".equals(nullable);
+    }
+
+    /**
+     * Новые страницы пишут HTML только в page_content, поэтому старая колонка
+     * должна допускать NULL.
+     */
+    public void makeLegacyContentNullable() {
+        jdbcTemplate.execute("ALTER TABLE page MODIFY content MEDIUMTEXT NULL");
+    }
+
+    public void dropLegacyContentColumn() {
+        jdbcTemplate.execute("ALTER TABLE page DROP COLUMN content");
+    }
+
+    public void findPagesWithLegacyContent(int afterId, int limit, LegacyContentHandler handler) {
+        jdbcTemplate.query("SELECT id, content FROM page WHERE content IS NOT NULL AND id > ? ORDER BY id LIMIT ?",
+                rs -> {
+                    handler.accept(rs.getInt("id"), rs.getString("content"));
+                }, afterId, limit);
+    }
+
+    /**
+     * Сохраняет сжатый HTML в page_content и очищает старую колонку. Если страница
+     * уже успела получить новый контент, он не перезаписывается.
+     */
+    @Transactional
+    public void moveLegacyContent(List<PageContent> pages) {
+        jdbcTemplate.batchUpdate("INSERT IGNORE INTO page_content (page_id, data) VALUES (?, ?)", pages, pages.size(),
+                (ps, page) -> {
+                    ps.setInt(1, page.getPageId());
+                    ps.setBytes(2, page.getData());
+                });
+        jdbcTemplate.batchUpdate("UPDATE page SET content = NULL WHERE id = ?", pages, pages.size(),
+                (ps, page) -> ps.setInt(1, page.getPageId()));
+    }
+
+    /**
+     * Читает страницы без извлечённого текста или позиций слов с id больше afterId,
+     * не более limit строк.
+     */
+    public void findPagesWithoutText(int afterId, int limit, PageContentHandler handler) {
+        jdbcTemplate.query("SELECT p.id, p.code, c.data FROM page p LEFT JOIN page_content c ON c.page_id = p.id " +
+                        "WHERE (p.plain_text IS NULL OR p.positions IS NULL) AND p.id > ? ORDER BY p.id LIMIT ?",
+                rs -> {
+                    handler.accept(rs.getInt("id"), rs.getInt("code"), rs.getBytes("data"));
+                }, afterId, limit);
+    }
+
+    public void updatePageText(List<PageText> pages) {
+        jdbcTemplate.batchUpdate("UPDATE page SET title = ?, plain_text = ?, positions = ? WHERE id = ?",
+                pages, pages.size(),
+                (ps, page) -> {
+                    ps.setString(1, page.getTitle());
+                    ps.setString(2, page.getText());
+                    ps.setBytes(3, page.getPositions());
+                    ps.setInt(4, page.getPageId());
+                });
+    }
+
+    /**
+     * Читает код ответа, валидаторы и хеш содержимого всех страниц сайта.
+     */
+    public void findPageStates(int siteId, PageStateHandler handler) {
+        jdbcTemplate.query("SELECT id, path, code, etag, last_modified, content_hash FROM page WHERE site_id = ?",
+                rs -> {
+                    long value = rs.getLong("content_hash");
+                    Long hash = rs.wasNull() ? null : value;
+                    handler.accept(new PageState(rs.getInt("id"), rs.getString("path"), rs.getInt("code"),
+                            rs.getString("etag"), rs.getString("last_modified"), hash));
+                }, siteId);
+    }
+
+    /**
+     * Страницы сайта с леммами (в позициях записана хотя бы одна), для которых
+     * нет ни одной строки индекса: их строки не успели попасть в БД до сбоя.
+     * Возвращает id страниц по их путям.
+     */
+    public Map<String, Integer> findUnindexedPages(int siteId) {
+        Map<String, Integer> pages = new HashMap<>();
+        jdbcTemplate.query("SELECT p.id, p.path FROM page p WHERE p.site_id = ? AND LENGTH(p.positions) > 1 " +
+                        "AND NOT EXISTS (SELECT 1 FROM search_index i WHERE i.page_id = p.id)",
+                rs -> {
+                    pages.put(rs.getString("path"), rs.getInt("id"));
+                }, siteId);
+        return pages;
+    }
+
+    /**
+     * Временный путь новой версии страницы, пока прежняя версия занимает её путь.
+     * Настоящие пути начинаются с «/» или «?», поэтому с ними он не совпадёт.
+     */
+    public static String replacementPath(int replacedPageId) {
+        return REPLACEMENT_PATH_PREFIX + replacedPageId;
+    }
+
+    /**
+     * Удаляет прежние версии страниц вместе с их строками индекса и уменьшает
+     * частоту их лемм, после чего отдаёт их пути новым версиям. Вызывается
+     * в транзакции, записывающей индекс новых версий.
+     */
+    public void replacePages(List<Replacement> replacements) {
+        int size = replacements.size();
+        jdbcTemplate.batchUpdate("UPDATE lemma l JOIN search_index i ON i.lemma_id = l.id " +
+                        "SET l.frequency = l.frequency - 1 WHERE i.page_id = ?", replacements, size,
+                (ps, replacement) -> ps.setInt(1, replacement.getReplacedPageId()));
+        jdbcTemplate.batchUpdate("DELETE FROM search_index WHERE page_id = ?", replacements, size,
+                (ps, replacement) -> ps.setInt(1, replacement.getReplacedPageId()));
+        jdbcTemplate.batchUpdate("DELETE FROM page_content WHERE page_id = ?", replacements, size,
+                (ps, replacement) -> ps.setInt(1, replacement.getReplacedPageId()));
+        jdbcTemplate.batchUpdate("DELETE FROM page WHERE id = ?", replacements, size,
+                (ps, replacement) -> ps.setInt(1, replacement.getReplacedPageId()));
+        jdbcTemplate.batchUpdate("UPDATE page SET path = ? WHERE id = ?", replacements, size,
+                (ps, replacement) -> {
+                    ps.setString(1, replacement.getPath());
+                    ps.setInt(2, replacement.getPageId());
+                });
+    }
+
+    /**
+     * Удаляет новые версии страниц сайта, оставшиеся под временным путём после сбоя:
+     * их прежние версии остались на месте.
+     */
+    @Transactional
+    public int deleteUnfinishedReplacements(int siteId) {
+        String pages = "SELECT id FROM page WHERE site_id = ? AND path LIKE '" + REPLACEMENT_PATH_PREFIX + "%'";
+        jdbcTemplate.update("DELETE FROM search_index WHERE page_id IN (" + pages + ")", siteId);
+        jdbcTemplate.update("DELETE FROM page_content WHERE page_id IN (" + pages + ")", siteId);
+        return jdbcTemplate.update("DELETE FROM page WHERE site_id = ? AND path LIKE '" +
+                REPLACEMENT_PATH_PREFIX + "%'", siteId);
+    }
+
+    /**
+     * Удаляет страницы вместе с их HTML-кодом.
+     */
+    @Transactional
+    public void deletePages(List<Integer> pageIds) {
+        jdbcTemplate.batchUpdate("DELETE FROM page_content WHERE page_id = ?", pageIds, pageIds.size(),
+                (ps, pageId) -> ps.setInt(1, pageId));
+        jdbcTemplate.batchUpdate("DELETE FROM page WHERE id = ?", pageIds, pageIds.size(),
+                (ps, pageId) -> ps.setInt(1, pageId));
+    }
+
+    public void updateValidators(int pageId, String etag, String lastModified) {
+        jdbcTemplate.update("UPDATE page SET etag = ?, last_modified = ? WHERE id = ?", etag, lastModified, pageId);
+    }
+
+    @FunctionalInterface
+    public interface PageStateHandler {
+        void accept(PageState page);
+    }
+
+    @FunctionalInterface
+    public interface LegacyContentHandler {
+        void accept(int pageId, String content);
+    }
+
+    @FunctionalInterface
+    public interface PageContentHandler {
+        void accept(int pageId, int code, byte[] data);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class PageState {
+        private final int pageId;
+        private final String path;
+        private final int code;
+        private final String etag;
+        private final String lastModified;
+        private final Long contentHash;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Replacement {
+        private final int pageId;
+        private final int replacedPageId;
+        private final String path;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class PageContent {
+        private final int pageId;
+        private final byte[] data;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class PageText {
+        private final int pageId;
+        private final String title;
+        private final String text;
+        private final byte[] positions;
+    }
+}
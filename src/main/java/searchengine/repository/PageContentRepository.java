@@ -0,0 +1,30 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.PageContentEntity;
+
+@Repository
+public interface PageContentRepository extends JpaRepository<PageContentEntity, Integer> {
+
+    /**
+     * Сохраняет уже сжатый контент без предварительного SELECT, который сделал бы save().
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO page_content (page_id, data) VALUES (:pageId, :data) " +
+            "ON DUPLICATE KEY UPDATE data = VALUES(data)", nativeQuery = true)
+    void upsert(@Param("pageId") Integer pageId, @Param("data") byte[] data);
+
+    @Modifying
+    @Query(value = "DELETE FROM page_content WHERE page_id = :pageId", nativeQuery = true)
+    void deleteByPageId(@Param("pageId") Integer pageId);
+
+    @Modifying
+    @Query(value = "DELETE FROM page_content WHERE page_id IN (SELECT id FROM page WHERE site_id = :siteId)", nativeQuery = true)
+    void deleteBySite(@Param("siteId") Integer siteId);
+}
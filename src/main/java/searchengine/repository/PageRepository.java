@@ -8,6 +8,8 @@ import org.springframework.stereotype.Repository;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -19,7 +21,30 @@ public interface PageRepository extends JpaRepository<PageEntity, Integer> {
 
     long countBySite(SiteEntity site);
 
+    /**
+     * Данные страниц для выдачи без HTML-кода.
+     */
+    @Query("SELECT p.id AS id, p.path AS path, p.title AS title, p.plainText AS plainText, p.positions AS positions, " +
+            "s.url AS siteUrl, s.name AS siteName FROM PageEntity p JOIN p.site s WHERE p.id IN :ids")
+    List<PageSummary> findSummariesByIdIn(@Param("ids") Collection<Integer> ids);
+
     @Modifying
     @Query("DELETE FROM PageEntity p WHERE p.site = :site")
     void deleteBySite(@Param("site") SiteEntity site);
+
+    interface PageSummary {
+        Integer getId();
+
+        String getPath();
+
+        String getTitle();
+
+        String getPlainText();
+
+        byte[] getPositions();
+
+        String getSiteUrl();
+
+        String getSiteName();
+    }
 }
\ No newline at end of file
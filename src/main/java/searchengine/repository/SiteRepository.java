@@ -1,12 +1,33 @@
 package searchengine.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.IndexingStatus;
 import searchengine.model.SiteEntity;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface SiteRepository extends JpaRepository<SiteEntity, Integer> {
-    Optional<SiteEntity> findByUrl(String url);
-}
\ No newline at end of file
+    List<SiteEntity> findAllByUrl(String url);
+
+    List<SiteEntity> findAllByStatus(IndexingStatus status);
+
+    Optional<SiteEntity> findFirstByUrlAndStatusOrderByIdDesc(String url, IndexingStatus status);
+
+    Optional<SiteEntity> findFirstByUrlAndStatusNotOrderByIdDesc(String url, IndexingStatus status);
+
+    /**
+     * Обновляет только время статуса, не трогая остальные поля записи сайта.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE site SET status_time = :time WHERE id = :siteId", nativeQuery = true)
+    void updateStatusTime(@Param("siteId") Integer siteId, @Param("time") LocalDateTime time);
+}
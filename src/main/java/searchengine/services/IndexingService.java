@@ -3,7 +3,14 @@ package searchengine.services;
 import searchengine.dto.ApiResponse;
 
 public interface IndexingService {
-    ApiResponse startIndexing();
+    /**
+     * @param incremental обойти сайты с действующим индексом повторно на месте,
+     *                    переиндексировав только новые и изменившиеся страницы
+     */
+    ApiResponse startIndexing(boolean incremental);
     ApiResponse stopIndexing();
+
+    /** Продолжает остановленный или прерванный обход сайтов, не загружая сохранённые страницы повторно. */
+    ApiResponse resumeIndexing();
     ApiResponse indexPage(String url);
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package searchengine.services;
+
+import searchengine.dto.metrics.MetricsResponse;
+
+public interface MetricsService {
+    MetricsResponse getMetrics();
+}
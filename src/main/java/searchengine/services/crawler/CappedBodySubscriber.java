@@ -0,0 +1,87 @@
+package searchengine.services.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Собирает тело ответа в массив, но не больше заданного числа байт: по
+ * достижении предела передача отменяется, а тело отмечается обрезанным.
+ * С пределом 0 тело не читается вовсе. {@link #cancel()} прерывает загрузку
+ * извне, например по таймауту.
+ */
+class CappedBodySubscriber implements HttpResponse.BodySubscriber<byte[]> {
+
+    private final long limit;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+    private volatile Flow.Subscription subscription;
+    private volatile boolean truncated;
+
+    CappedBodySubscriber(long limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (limit <= 0) {
+            subscription.cancel();
+            result.complete(new byte[0]);
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        if (result.isDone()) {
+            return;
+        }
+        for (ByteBuffer item : items) {
+            int length = (int) Math.min(item.remaining(), limit - bytes.size());
+            byte[] chunk = new byte[length];
+            item.get(chunk);
+            bytes.write(chunk, 0, length);
+            if (bytes.size() >= limit) {
+                // тело ровно в предел неотличимо от обрезанного: продолжение уже не читается
+                truncated = true;
+                subscription.cancel();
+                result.complete(bytes.toByteArray());
+                return;
+            }
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        result.completeExceptionally(error);
+    }
+
+    @Override
+    public void onComplete() {
+        result.complete(bytes.toByteArray());
+    }
+
+    @Override
+    public CompletionStage<byte[]> getBody() {
+        return result;
+    }
+
+    /** Передача остановлена по пределу размера, и тело может быть неполным. */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    void cancel() {
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package searchengine.services.crawler;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import searchengine.config.SeenSetSettings;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Состояние обхода одного сайта: множество посещённых адресов, счётчики
+ * и future, которое завершается, когда не осталось ни ожидающих,
+ * ни выполняющихся запросов, ни страниц в обработке. Все адреса приводятся
+ * к каноническому виду ({@link UrlCanonicalizer}) до проверки на повтор.
+ */
+@Getter
+public class CrawlJob {
+
+    private static final Pattern SKIPPED_EXTENSIONS = Pattern.compile(
+            ".*\\.(jpg|jpeg|png|gif|webp|svg|ico|bmp|tiff|pdf|zip|rar|7z|tar|gz|doc|docx|xls|xlsx|ppt|pptx|mp3|mp4|avi|mov|wmv|flv|css|js)$");
+
+    /** Канонический адрес сайта без завершающего слэша. */
+    private final String baseUrl;
+    private final int concurrency;
+    private final long delayMillis;
+    private final PageHandler handler;
+
+    @Getter(AccessLevel.NONE)
+    private final UrlSeenSet seenUrls;
+    /** Ссылки, отброшенные как уже встречавшиеся после приведения к каноническому виду. */
+    private final AtomicInteger duplicates = new AtomicInteger();
+    /** Новые адреса, отброшенные из-за заполненного множества посещённых. */
+    private final AtomicInteger overflow = new AtomicInteger();
+    /** Адреса, поставленные в очередь; ограничены бюджетом страниц. */
+    private final AtomicInteger enqueued = new AtomicInteger();
+    private final AtomicInteger beyondDepth = new AtomicInteger();
+    private final AtomicInteger overBudget = new AtomicInteger();
+    /** Адреса, запрещённые правилами robots.txt. */
+    private final AtomicInteger disallowed = new AtomicInteger();
+    /** Ответы 429/503 и таймауты, после которых хост замедлялся. */
+    private final AtomicInteger throttled = new AtomicInteger();
+    /** Повторные запросы адресов после отказа хоста. */
+    private final AtomicInteger retries = new AtomicInteger();
+    /** Адреса, не загруженные из-за ошибки соединения, таймаута или сбоя обработки. */
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger pages = new AtomicInteger();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    /** Адреса с их глубиной, которые ставятся в очередь вместе с главной страницей. */
+    @Setter
+    private volatile Map<String, Integer> seeds = Collections.emptyMap();
+    /** Наибольшая глубина ссылок от главной страницы; 0 - без ограничения. */
+    @Setter
+    private volatile int maxDepth;
+    /** Наибольшее число адресов, поставленных в очередь за обход; 0 - без ограничения. */
+    @Setter
+    private volatile int maxPages;
+    /** Валидаторы известных страниц для условных запросов. */
+    @Setter
+    private volatile Map<String, PageValidators> validators = Collections.emptyMap();
+    /** Пауза между запросами, меньше которой обход не ускоряется (Crawl-delay), мс. */
+    @Setter
+    private volatile long minDelayMillis;
+    /** Правила robots.txt сайта. */
+    @Setter
+    private volatile RobotsRules robots = RobotsRules.ALLOW_ALL;
+    /** Журнал, в который записываются адреса, поставленные в очередь. */
+    @Setter
+    private volatile FrontierJournal journal;
+
+    private volatile boolean cancelled;
+    private volatile HostScheduler scheduler;
+
+    public CrawlJob(String baseUrl, int concurrency, long delayMillis, SeenSetSettings seenSet,
+                    PageHandler handler) {
+        this.baseUrl = UrlCanonicalizer.canonicalizeBase(baseUrl);
+        this.seenUrls = new UrlSeenSet(seenSet.getMaxMemory().toBytes(), seenSet.isBloomFallback());
+        this.concurrency = Math.max(1, concurrency);
+        this.delayMillis = Math.max(0, delayMillis);
+        this.handler = handler;
+    }
+
+    /**
+     * Ставит адрес в очередь в каноническом виде, если он относится к сайту,
+     * ещё не встречался и укладывается в ограничения глубины и бюджета страниц.
+     * Очередь упорядочена по глубине: неглубокие страницы запрашиваются первыми.
+     */
+    public boolean offer(String url, int depth) {
+        if (cancelled) {
+            return false;
+        }
+        if (maxDepth > 0 && depth > maxDepth) {
+            beyondDepth.incrementAndGet();
+            return false;
+        }
+        url = UrlCanonicalizer.canonicalize(url);
+        if (url == null || !isValidUrl(url)) {
+            return false;
+        }
+        if (!robots.isAllowed(url)) {
+            disallowed.incrementAndGet();
+            return false;
+        }
+        UrlSeenSet.Result result = seenUrls.add(url);
+        if (result != UrlSeenSet.Result.ADDED) {
+            (result == UrlSeenSet.Result.SEEN ? duplicates : overflow).incrementAndGet();
+            return false;
+        }
+        if (maxPages > 0 && enqueued.incrementAndGet() > maxPages) {
+            overBudget.incrementAndGet();
+            return false;
+        }
+        retain();
+        FrontierJournal current = journal;
+        if (current != null) {
+            current.append(url, depth);
+        }
+        scheduler.enqueue(this, url, depth);
+        return true;
+    }
+
+    /**
+     * Ставит в очередь ссылки одной страницы и сбрасывает журнал на диск.
+     */
+    public void offerAll(Collection<String> urls, int depth) {
+        for (String url : urls) {
+            offer(url, depth);
+        }
+        FrontierJournal current = journal;
+        if (current != null) {
+            current.flush();
+        }
+    }
+
+    /**
+     * Принимает ли обход новые адреса: не остановлен и бюджет страниц не исчерпан.
+     */
+    public boolean canAccept() {
+        return !cancelled && (maxPages <= 0 || enqueued.get() < maxPages);
+    }
+
+    /**
+     * Отмечает адреса, загруженные в прерванном обходе, чтобы не запрашивать их снова.
+     */
+    public void markVisited(Collection<String> urls) {
+        for (String url : urls) {
+            String canonical = UrlCanonicalizer.canonicalize(url);
+            if (canonical != null) {
+                seenUrls.add(canonical);
+            }
+        }
+    }
+
+    /**
+     * Ставился ли адрес в очередь или был отмечен посещённым. При переполнении
+     * множества посещённых может ошибочно вернуть true, но не false.
+     */
+    public boolean isSeen(String url) {
+        String canonical = UrlCanonicalizer.canonicalize(url);
+        return canonical != null && seenUrls.contains(canonical);
+    }
+
+    public long getSeenUrls() {
+        return seenUrls.size();
+    }
+
+    public long getSeenSetBytes() {
+        return seenUrls.memoryBytes();
+    }
+
+    public boolean isSeenSetApproximate() {
+        return seenUrls.isBloomFilter();
+    }
+
+    public void cancel() {
+        cancelled = true;
+        HostScheduler current = scheduler;
+        if (current != null) {
+            current.cancel(this);
+        }
+    }
+
+    void attach(HostScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Отмечает ещё одну незавершённую единицу работы, например страницу,
+     * которая ушла в конвейер индексации после загрузки.
+     */
+    public void retain() {
+        pending.incrementAndGet();
+    }
+
+    public void release() {
+        if (pending.decrementAndGet() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    private boolean isValidUrl(String url) {
+        if (!UrlCanonicalizer.isWithin(url, baseUrl)) {
+            return false;
+        }
+        int query = url.indexOf('?');
+        String path = query < 0 ? url : url.substring(0, query);
+        return !SKIPPED_EXTENSIONS.matcher(path.toLowerCase(Locale.ROOT)).matches();
+    }
+}
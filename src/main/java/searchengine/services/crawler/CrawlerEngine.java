@@ -0,0 +1,25 @@
+package searchengine.services.crawler;
+
+import searchengine.dto.metrics.CrawlMetrics;
+import searchengine.dto.metrics.StageMetrics;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Движок обхода сайта. Реализация сама решает, на каких потоках выполняются
+ * запросы и как соблюдается пауза между ними; вызывающему коду достаточно
+ * дождаться завершения возвращённого future.
+ */
+public interface CrawlerEngine {
+
+    CompletableFuture<Void> crawl(CrawlJob job);
+
+    void stopAll();
+
+    /** Метрики стадии загрузки: очередь ожидающих адресов и темп запросов. */
+    StageMetrics getMetrics();
+
+    /** Состояние текущих обходов: очередь, посещённые и повторные адреса по каждому сайту. */
+    List<CrawlMetrics> getCrawlMetrics();
+}
@@ -0,0 +1,55 @@
+package searchengine.services.crawler;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+
+@Getter
+@RequiredArgsConstructor
+public class FetchedPage {
+    private final String url;
+    private final int statusCode;
+    private final String html;
+    private final String etag;
+    private final String lastModified;
+    /** Пауза, которую сервер попросил выдержать заголовком Retry-After; null - не указана. */
+    private final Duration retryAfter;
+    /** Тело обрезано по пределу max-body-size: страница загружена не целиком. */
+    private final boolean truncated;
+
+    public FetchedPage(String url, int statusCode, String html) {
+        this(url, statusCode, html, null, null, null, false);
+    }
+
+    /** Сервер перегружен или ограничивает частоту запросов: запрос стоит повторить позже. */
+    public boolean isThrottled() {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    /** Сервер подтвердил, что страница не изменилась с прошлого обхода. */
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+
+    /**
+     * Хеш тела ответа: первые 8 байт SHA-256. По нему повторный обход узнаёт
+     * неизменившиеся страницы, если сервер не поддерживает условные запросы.
+     * У обрезанного тела хеша нет: по началу страницы нельзя судить, изменилась ли она.
+     */
+    public Long getContentHash() {
+        if (truncated) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(html.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package searchengine.services.crawler;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Дописывает адреса в журнал обхода. Запись буферизуется и сбрасывается на диск
+ * после ссылок каждой страницы, до того как страница будет сохранена в БД.
+ * Ошибка записи отключает журнал, но не останавливает обход.
+ */
+@Slf4j
+public class FrontierJournal implements AutoCloseable {
+
+    private final int siteId;
+    private Writer writer;
+    private boolean failed;
+
+    FrontierJournal(int siteId, Writer writer) {
+        this.siteId = siteId;
+        this.writer = writer;
+    }
+
+    /**
+     * Дописывает строку "глубина адрес".
+     */
+    public synchronized void append(String url, int depth) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(Integer.toString(depth));
+            writer.write(' ');
+            writer.write(url);
+            writer.write('\n');
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void flush() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /** Журнал неполон, и продолжить обход по нему нельзя. */
+    public synchronized boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Не удалось закрыть журнал обхода сайта {}: {}", siteId, e.getMessage());
+        }
+        writer = null;
+    }
+
+    private void fail(IOException e) {
+        log.error("Ошибка записи журнала обхода сайта {}, продолжить обход после остановки будет нельзя", siteId, e);
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+            // журнал уже неработоспособен
+        }
+        writer = null;
+        failed = true;
+    }
+}
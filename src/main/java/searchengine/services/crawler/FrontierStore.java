@@ -0,0 +1,152 @@
+package searchengine.services.crawler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SitesList;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Журналы обхода: по одному файлу site-{id}.frontier на поколение сайта.
+ * В журнал дописывается каждый адрес, поставленный в очередь обхода; вместе
+ * с сохранёнными в БД страницами он позволяет продолжить прерванный обход.
+ * Журнал удаляется, когда обход завершён полностью.
+ */
+@Component
+@Slf4j
+public class FrontierStore {
+
+    private final Path directory;
+
+    public FrontierStore(SitesList sitesList) {
+        String path = sitesList.getFrontierDir();
+        this.directory = path == null || path.isBlank() ? null : Paths.get(path);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public boolean exists(int siteId) {
+        return isEnabled() && Files.exists(file(siteId));
+    }
+
+    /**
+     * Открывает журнал для записи. Новый обход начинает журнал заново,
+     * продолженный дописывает в существующий.
+     */
+    public FrontierJournal open(int siteId, boolean append) {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            Files.createDirectories(directory);
+            if (append && Files.exists(file(siteId))) {
+                truncateIncompleteLine(file(siteId));
+            }
+            BufferedWriter writer = append
+                    ? Files.newBufferedWriter(file(siteId), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                    : Files.newBufferedWriter(file(siteId), StandardCharsets.UTF_8);
+            return new FrontierJournal(siteId, writer);
+        } catch (IOException e) {
+            log.error("Не удалось открыть журнал обхода сайта {}", siteId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Читает адреса журнала с их глубиной, в порядке постановки в очередь.
+     * Строка, недописанная из-за сбоя, пропускается.
+     */
+    public Map<String, Integer> read(int siteId) throws IOException {
+        Map<String, Integer> urls = new LinkedHashMap<>();
+        String pending = null;
+        try (BufferedReader reader = Files.newBufferedReader(file(siteId), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (pending != null) {
+                    addEntry(urls, pending);
+                }
+                pending = line.isEmpty() ? null : line;
+            }
+        }
+        if (pending != null && endsWithNewLine(file(siteId))) {
+            addEntry(urls, pending);
+        }
+        return urls;
+    }
+
+    private static void addEntry(Map<String, Integer> urls, String line) {
+        int space = line.indexOf(' ');
+        if (space <= 0) {
+            return;
+        }
+        try {
+            urls.merge(line.substring(space + 1), Integer.parseInt(line.substring(0, space)), Math::min);
+        } catch (NumberFormatException e) {
+            // повреждённая строка
+        }
+    }
+
+    public void delete(int siteId) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file(siteId));
+        } catch (IOException e) {
+            log.warn("Не удалось удалить журнал обхода сайта {}: {}", siteId, e.getMessage());
+        }
+    }
+
+    /**
+     * Отрезает строку, недописанную из-за сбоя, чтобы новые адреса не склеились с ней.
+     */
+    private static void truncateIncompleteLine(Path file) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            long end = channel.size();
+            while (end > 0) {
+                int length = (int) Math.min(buffer.capacity(), end);
+                buffer.clear().limit(length);
+                channel.position(end - length);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // дочитываем блок целиком
+                }
+                for (int i = length - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        channel.truncate(end - length + i + 1);
+                        return;
+                    }
+                }
+                end -= length;
+            }
+            channel.truncate(0);
+        }
+    }
+
+    private static boolean endsWithNewLine(Path file) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            if (channel.size() == 0) {
+                return false;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(last);
+            return last.get(0) == '\n';
+        }
+    }
+
+    private Path file(int siteId) {
+        return directory.resolve("site-" + siteId + ".frontier");
+    }
+}
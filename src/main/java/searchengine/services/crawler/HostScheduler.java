@@ -0,0 +1,234 @@
+package searchengine.services.crawler;
+
+import searchengine.services.pipeline.ThroughputMeter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Планировщик запросов к одному хосту. Ограничивает число одновременных
+ * запросов и выдерживает паузу между их началом с помощью таймера,
+ * не занимая потоки ожиданием; оба предела подстраивает {@link RateController}
+ * по ответам хоста. Очередь упорядочена по глубине ссылки, при равной
+ * глубине - по времени постановки (обход в ширину). Если на хосте несколько
+ * сайтов, их обходы делят один планировщик, а значит, и пределы скорости.
+ */
+class HostScheduler {
+
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+    private final FetchTask fetchTask;
+    private final RateController rate;
+    private final ThroughputMeter throughput = new ThroughputMeter();
+
+    private final PriorityQueue<QueuedUrl> queue = new PriorityQueue<>(
+            Comparator.comparingInt(QueuedUrl::getDepth).thenComparingLong(QueuedUrl::getSequence));
+    private long sequence;
+    private int inFlight;
+    private long nextSlot = System.nanoTime();
+    private boolean timerArmed;
+    private final Set<CrawlJob> jobs = new HashSet<>();
+
+    HostScheduler(Executor executor, ScheduledExecutorService timer, RateController rate, FetchTask fetchTask) {
+        this.executor = executor;
+        this.timer = timer;
+        this.rate = rate;
+        this.fetchTask = fetchTask;
+    }
+
+    synchronized void attach(CrawlJob job) {
+        jobs.add(job);
+    }
+
+    /**
+     * Отсоединяет завершённый обход; возвращает true, если хост больше
+     * никто не обходит и планировщик можно забыть.
+     */
+    synchronized boolean detach(CrawlJob job) {
+        jobs.remove(job);
+        return jobs.isEmpty();
+    }
+
+    void enqueue(CrawlJob job, String url, int depth) {
+        synchronized (this) {
+            queue.add(new QueuedUrl(job, url, depth, 0, sequence++));
+        }
+        dispatch();
+    }
+
+    /**
+     * Возвращает в очередь адрес, на который хост ответил отказом; запрос
+     * повторится после паузы, назначенной {@link RateController}.
+     */
+    void retry(CrawlJob job, String url, int depth, int attempt) {
+        job.retain();
+        synchronized (this) {
+            queue.add(new QueuedUrl(job, url, depth, attempt, sequence++));
+        }
+    }
+
+    void responded(long latencyNanos) {
+        synchronized (this) {
+            rate.onResponse(latencyNanos, System.nanoTime());
+        }
+        throughput.mark();
+    }
+
+    void throttled(Duration retryAfter) {
+        synchronized (this) {
+            rate.onThrottled(retryAfter, System.nanoTime());
+        }
+        throughput.mark();
+    }
+
+    synchronized int concurrencyLimit() {
+        return rate.concurrencyLimit();
+    }
+
+    synchronized long delayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(rate.delayNanos());
+    }
+
+    synchronized long latencyMillis() {
+        return rate.latencyMillis();
+    }
+
+    /** Запросов к хосту в секунду за последнюю минуту. */
+    double requestsPerSecond() {
+        return throughput.perSecond();
+    }
+
+    synchronized int queueSize() {
+        return queue.size();
+    }
+
+    /** Адресов обхода одного сайта в очереди хоста. */
+    synchronized int queueSize(CrawlJob job) {
+        int size = 0;
+        for (QueuedUrl queued : queue) {
+            if (queued.getJob() == job) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Убирает из очереди адреса остановленного обхода, не трогая
+     * обходы других сайтов этого хоста.
+     */
+    void cancel(CrawlJob job) {
+        int dropped;
+        synchronized (this) {
+            int size = queue.size();
+            queue.removeIf(queued -> queued.getJob() == job);
+            dropped = size - queue.size();
+        }
+        for (int i = 0; i < dropped; i++) {
+            job.release();
+        }
+        dispatch();
+    }
+
+    void requestFinished() {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    void dispatch() {
+        List<QueuedUrl> ready = new ArrayList<>();
+        List<QueuedUrl> dropped = new ArrayList<>();
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            while (inFlight < rate.concurrencyLimit() && !queue.isEmpty()) {
+                // адрес, поставленный одновременно с остановкой обхода, снимается без запроса
+                if (queue.peek().getJob().isCancelled()) {
+                    dropped.add(queue.poll());
+                    continue;
+                }
+                long slot = Math.max(nextSlot, rate.pausedUntil());
+                if (now < slot) {
+                    armTimer(slot - now);
+                    break;
+                }
+                ready.add(queue.poll());
+                inFlight++;
+                nextSlot = now + rate.delayNanos();
+            }
+        }
+
+        for (QueuedUrl queued : dropped) {
+            queued.getJob().release();
+        }
+        for (QueuedUrl queued : ready) {
+            executor.execute(() -> fetchTask.fetch(queued.getJob(), queued.getUrl(), queued.getDepth(),
+                    queued.getAttempt()));
+        }
+    }
+
+    private void armTimer(long delay) {
+        if (timerArmed) {
+            return;
+        }
+        timerArmed = true;
+        timer.schedule(() -> {
+            synchronized (this) {
+                timerArmed = false;
+            }
+            dispatch();
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    @FunctionalInterface
+    interface FetchTask {
+        void fetch(CrawlJob job, String url, int depth, int attempt);
+    }
+
+    private static final class QueuedUrl {
+        private final CrawlJob job;
+        private final String url;
+        private final int depth;
+        /** Номер повтора после отказа хоста; 0 - первый запрос. */
+        private final int attempt;
+        private final long sequence;
+
+        private QueuedUrl(CrawlJob job, String url, int depth, int attempt, long sequence) {
+            this.job = job;
+            this.url = url;
+            this.depth = depth;
+            this.attempt = attempt;
+            this.sequence = sequence;
+        }
+
+        CrawlJob getJob() {
+            return job;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        int getDepth() {
+            return depth;
+        }
+
+        int getAttempt() {
+            return attempt;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+    }
+}
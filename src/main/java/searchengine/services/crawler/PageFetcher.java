@@ -0,0 +1,302 @@
+package searchengine.services.crawler;
+
+import lombok.RequiredArgsConstructor;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.springframework.stereotype.Component;
+import searchengine.config.FetcherSettings;
+import searchengine.config.SitesList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Загрузка страниц через один общий {@link HttpClient}: соединения с хостом
+ * переиспользуются между запросами (keep-alive, мультиплексирование HTTP/2),
+ * ответы запрашиваются сжатыми. Число одновременных соединений с хостом
+ * ограничивает {@link HostScheduler}. Тело страницы разбирает Jsoup
+ * на стадии конвейера индексации.
+ * <p>
+ * Тело декодируется в строку, а не передаётся Jsoup потоком: строка всё равно
+ * нужна для хеша содержимого и хранения в page_content, а размер тела в памяти
+ * ограничен max-body-size. Разбор потока декодировал бы те же байты второй раз.
+ * Тело, обрезанное по этому пределу, отмечается в {@link FetchedPage#isTruncated()}.
+ */
+@Component
+public class PageFetcher {
+
+    /** Размеры колонок page.etag и page.last_modified. */
+    private static final int MAX_ETAG_LENGTH = 255;
+    private static final int MAX_LAST_MODIFIED_LENGTH = 64;
+
+    /** Сколько байт начала страницы просматривать в поисках meta charset. */
+    private static final int CHARSET_SNIFF_BYTES = 2048;
+    private static final Pattern CONTENT_TYPE_CHARSET = Pattern.compile("(?i)charset=\"?([\\w.:-]+)");
+    private static final Pattern META_CHARSET = Pattern.compile("(?i)<meta[^>]+charset\\s*=\\s*[\"']?([\\w.:-]+)");
+
+    private final HttpClient client;
+    private final FetcherSettings settings;
+
+    public PageFetcher(SitesList sitesList) {
+        this.settings = sitesList.getFetcher();
+        this.client = HttpClient.newBuilder()
+                .version(settings.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(settings.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    public FetchedPage fetch(String url) throws IOException {
+        return fetch(url, null);
+    }
+
+    /**
+     * Загружает страницу условным запросом, если известны валидаторы
+     * с прошлого обхода; неизменившаяся страница приходит с кодом 304 без тела.
+     * Успешный ответ не HTML отклоняется по заголовку Content-Type, не читая тела;
+     * вся загрузка ограничена по времени total-timeout.
+     */
+    public FetchedPage fetch(String url, PageValidators validators) throws IOException {
+        HttpRequest.Builder request = request(url, settings.getRequestTimeout());
+        if (validators != null) {
+            if (validators.getEtag() != null) {
+                request.header("If-None-Match", validators.getEtag());
+            }
+            if (validators.getLastModified() != null) {
+                request.header("If-Modified-Since", validators.getLastModified());
+            }
+        }
+        AtomicReference<CappedBodySubscriber> body = new AtomicReference<>();
+        HttpResponse.BodyHandler<byte[]> handler = info -> {
+            boolean read = info.statusCode() != 204 && info.statusCode() != 304
+                    && isHtml(info.headers().firstValue("Content-Type").orElse(null));
+            body.set(new CappedBodySubscriber(read ? settings.getMaxBodySize().toBytes() : 0));
+            return body.get();
+        };
+        HttpResponse<byte[]> response = sendWithDeadline(request.build(), handler, body);
+
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        String html = "";
+        boolean truncated = body.get().isTruncated();
+        if (response.body().length > 0) {
+            DecodedBody decoded = decode(response, response.body());
+            html = new String(decoded.bytes, charsetOf(contentType, decoded.bytes));
+            truncated |= decoded.truncated;
+        } else if (!isHtml(contentType) && response.statusCode() / 100 == 2) {
+            throw new UnsupportedMimeTypeException("Неподдерживаемый тип содержимого", contentType, url);
+        }
+
+        return new FetchedPage(url, response.statusCode(), html,
+                validator(response.headers().firstValue("ETag").orElse(null), MAX_ETAG_LENGTH),
+                validator(response.headers().firstValue("Last-Modified").orElse(null), MAX_LAST_MODIFIED_LENGTH),
+                retryAfter(response.headers().firstValue("Retry-After").orElse(null)),
+                truncated);
+    }
+
+    /**
+     * Открывает распакованное тело ответа любого типа как поток, не загружая
+     * его целиком в память, например для robots.txt и карт сайта. Ответ
+     * с кодом, отличным от 200, приводит к {@link HttpStatusException}.
+     */
+    public InputStream openStream(String url) throws IOException {
+        HttpResponse<InputStream> response = send(request(url, Duration.ofSeconds(60)).build());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new HttpStatusException("HTTP " + response.statusCode(), response.statusCode(), url);
+        }
+        return decode(response, response.body());
+    }
+
+    private HttpRequest.Builder request(String url, Duration timeout) throws IOException {
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(timeout)
+                    .header("User-Agent", settings.getUserAgent())
+                    .header("Referer", "http://www.google.com")
+                    .header("Accept-Encoding", "gzip, deflate")
+                    .GET();
+            // По незащищённому соединению HTTP/2 потребовал бы Upgrade: h2c, который понимают не все серверы
+            if (url.regionMatches(true, 0, "http:", 0, 5)) {
+                request.version(HttpClient.Version.HTTP_1_1);
+            }
+            return request;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректный адрес: " + url, e);
+        }
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Загрузка прервана: " + request.uri());
+        }
+    }
+
+    /**
+     * Отправляет запрос и ждёт ответ вместе с телом не дольше total-timeout:
+     * таймаут запроса ограничивает только ожидание заголовков, а сервер,
+     * медленно отдающий тело, иначе занял бы поток загрузки без срока.
+     */
+    private HttpResponse<byte[]> sendWithDeadline(HttpRequest request, HttpResponse.BodyHandler<byte[]> handler,
+                                                  AtomicReference<CappedBodySubscriber> body) throws IOException {
+        CompletableFuture<HttpResponse<byte[]>> response = client.sendAsync(request, handler);
+        try {
+            return response.get(settings.getTotalTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            abort(response, body);
+            throw new HttpTimeoutException("Страница не загружена за " + settings.getTotalTimeout().toSeconds()
+                    + " с: " + request.uri());
+        } catch (InterruptedException e) {
+            abort(response, body);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Загрузка прервана: " + request.uri());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void abort(CompletableFuture<?> response, AtomicReference<CappedBodySubscriber> body) {
+        response.cancel(true);
+        CappedBodySubscriber subscriber = body.get();
+        if (subscriber != null) {
+            subscriber.cancel();
+        }
+    }
+
+    /**
+     * Распаковывает загруженное тело. Тело, обрезанное по пределу размера,
+     * распаковывается до места обрыва; распакованное тело обрезается по тому же
+     * пределу. В обоих случаях оно отмечается обрезанным.
+     */
+    private DecodedBody decode(HttpResponse<?> response, byte[] body) throws IOException {
+        InputStream decoded = decode(response, new ByteArrayInputStream(body));
+        if (decoded instanceof ByteArrayInputStream) {
+            return new DecodedBody(body, false);
+        }
+        boolean truncated = false;
+        ByteArrayOutputStream output = new ByteArrayOutputStream(body.length * 4);
+        byte[] chunk = new byte[8192];
+        long limit = settings.getMaxBodySize().toBytes();
+        try (decoded) {
+            int read;
+            while (output.size() < limit && (read = decoded.read(chunk, 0,
+                    (int) Math.min(chunk.length, limit - output.size()))) > 0) {
+                output.write(chunk, 0, read);
+            }
+            truncated = output.size() >= limit && decoded.read() >= 0;
+        } catch (EOFException e) {
+            // сжатое тело обрезано по пределу размера
+            truncated = true;
+        }
+        return new DecodedBody(output.toByteArray(), truncated);
+    }
+
+    @RequiredArgsConstructor
+    private static class DecodedBody {
+        private final byte[] bytes;
+        private final boolean truncated;
+    }
+
+    /**
+     * HttpClient не распаковывает ответ сам, поэтому Content-Encoding
+     * обрабатывается здесь.
+     */
+    private static InputStream decode(HttpResponse<?> response, InputStream body) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("")
+                .trim().toLowerCase(Locale.ROOT);
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(body);
+            case "deflate" -> new InflaterInputStream(body);
+            default -> body;
+        };
+    }
+
+    /** Ответ без Content-Type принимается, как и прежде. */
+    private static boolean isHtml(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/html") || type.startsWith("application/xhtml+xml");
+    }
+
+    /**
+     * Кодировка страницы: из заголовка Content-Type, иначе из meta charset
+     * в начале документа, по умолчанию UTF-8.
+     */
+    private static Charset charsetOf(String contentType, byte[] body) {
+        Charset charset = contentType == null ? null : charset(CONTENT_TYPE_CHARSET.matcher(contentType));
+        if (charset == null) {
+            String head = new String(body, 0, Math.min(body.length, CHARSET_SNIFF_BYTES), StandardCharsets.ISO_8859_1);
+            charset = charset(META_CHARSET.matcher(head));
+        }
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
+
+    private static Charset charset(Matcher matcher) {
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return Charset.forName(matcher.group(1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Retry-After задаётся числом секунд или датой HTTP; непонятное значение игнорируется.
+     */
+    static Duration retryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                Instant at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                Duration wait = Duration.between(Instant.now(), at);
+                return wait.isNegative() ? Duration.ZERO : wait;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    /** Обрезанный валидатор бесполезен, поэтому слишком длинное значение не сохраняется. */
+    private static String validator(String value, int maxLength) {
+        return value != null && value.length() <= maxLength ? value : null;
+    }
+}
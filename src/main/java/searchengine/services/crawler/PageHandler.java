@@ -0,0 +1,13 @@
+package searchengine.services.crawler;
+
+@FunctionalInterface
+public interface PageHandler {
+
+    /**
+     * Принимает загруженную страницу и её глубину - число переходов по ссылкам
+     * от главной страницы. Если обработка продолжается асинхронно, обработчик
+     * должен вызвать {@link CrawlJob#retain()} до возврата
+     * и {@link CrawlJob#release()} по её окончании.
+     */
+    void handle(CrawlJob job, FetchedPage page, int depth) throws InterruptedException;
+}
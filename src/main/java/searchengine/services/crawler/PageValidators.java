@@ -0,0 +1,15 @@
+package searchengine.services.crawler;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Значения ETag и Last-Modified с прошлого обхода страницы; отправляются
+ * как If-None-Match и If-Modified-Since.
+ */
+@Getter
+@RequiredArgsConstructor
+public class PageValidators {
+    private final String etag;
+    private final String lastModified;
+}
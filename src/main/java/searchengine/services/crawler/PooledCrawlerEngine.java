@@ -0,0 +1,218 @@
+package searchengine.services.crawler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import searchengine.config.RateSettings;
+import searchengine.config.SitesList;
+import searchengine.dto.metrics.CrawlMetrics;
+import searchengine.dto.metrics.StageMetrics;
+import searchengine.services.pipeline.ThroughputMeter;
+
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLHandshakeException;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Движок обхода на общем пуле потоков загрузки. Пул рассчитан на блокирующий
+ * сетевой ввод-вывод и разделяется всеми сайтами, а вежливость по отношению
+ * к каждому хосту обеспечивает {@link HostScheduler}: сайты одного хоста
+ * обходятся через общий планировщик, и пределы скорости у них общие. Адрес, на который
+ * хост ответил 429/503 или не ответил вовремя, запрашивается повторно
+ * после паузы, а страница с таким ответом сохраняется, только если
+ * повторы исчерпаны.
+ */
+@Component
+@Slf4j
+public class PooledCrawlerEngine implements CrawlerEngine {
+
+    private final PageFetcher pageFetcher;
+    private final RateSettings rateSettings;
+    private final int threads;
+    private final ThreadPoolExecutor fetchExecutor;
+    private final ScheduledExecutorService timer;
+    private final Set<CrawlJob> activeJobs = ConcurrentHashMap.newKeySet();
+    /** Планировщики по источнику (схема, хост, порт); доступ под блокировкой карты. */
+    private final Map<String, HostScheduler> schedulers = new HashMap<>();
+    private final ThroughputMeter throughput = new ThroughputMeter();
+
+    public PooledCrawlerEngine(PageFetcher pageFetcher, SitesList sitesList) {
+        this.pageFetcher = pageFetcher;
+        this.rateSettings = sitesList.getRate();
+        this.threads = sitesList.getCrawlerThreads();
+        this.fetchExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("crawler-"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("crawler-timer-"));
+    }
+
+    @Override
+    public CompletableFuture<Void> crawl(CrawlJob job) {
+        job.attach(attachScheduler(job));
+        activeJobs.add(job);
+        job.getCompletion().whenComplete((result, error) -> {
+            activeJobs.remove(job);
+            detachScheduler(job);
+        });
+
+        job.retain();
+        job.offer(job.getBaseUrl(), 0);
+        job.getSeeds().forEach(job::offer);
+        job.release();
+        return job.getCompletion();
+    }
+
+    /**
+     * Планировщик хоста сайта: общий с другими текущими обходами того же хоста,
+     * иначе новый. Параметры скорости нового планировщика берутся у обхода,
+     * который его создал.
+     */
+    private HostScheduler attachScheduler(CrawlJob job) {
+        String origin = UrlCanonicalizer.originOf(job.getBaseUrl());
+        synchronized (schedulers) {
+            HostScheduler scheduler = schedulers.computeIfAbsent(origin, key -> new HostScheduler(
+                    fetchExecutor, timer, new RateController(job, rateSettings), this::fetch));
+            scheduler.attach(job);
+            return scheduler;
+        }
+    }
+
+    private void detachScheduler(CrawlJob job) {
+        String origin = UrlCanonicalizer.originOf(job.getBaseUrl());
+        synchronized (schedulers) {
+            HostScheduler scheduler = schedulers.get(origin);
+            if (scheduler != null && scheduler.detach(job)) {
+                schedulers.remove(origin);
+            }
+        }
+    }
+
+    @Override
+    public void stopAll() {
+        for (CrawlJob job : activeJobs) {
+            job.cancel();
+        }
+    }
+
+    @Override
+    public StageMetrics getMetrics() {
+        int queued = 0;
+        synchronized (schedulers) {
+            for (HostScheduler scheduler : schedulers.values()) {
+                queued += scheduler.queueSize();
+            }
+        }
+
+        StageMetrics metrics = new StageMetrics();
+        metrics.setName("fetch");
+        metrics.setThreads(threads);
+        metrics.setBusyThreads(fetchExecutor.getActiveCount());
+        metrics.setQueueSize(queued + fetchExecutor.getQueue().size());
+        metrics.setQueueCapacity(-1);
+        metrics.setProcessed(fetchExecutor.getCompletedTaskCount());
+        metrics.setThroughput(throughput.perSecond());
+        return metrics;
+    }
+
+    @Override
+    public List<CrawlMetrics> getCrawlMetrics() {
+        List<CrawlMetrics> crawls = new ArrayList<>();
+        for (CrawlJob job : activeJobs) {
+            CrawlMetrics metrics = new CrawlMetrics();
+            metrics.setSite(job.getBaseUrl());
+            metrics.setQueueSize(job.getScheduler().queueSize(job));
+            metrics.setPages(job.getPages().get());
+            metrics.setSeenUrls(job.getSeenUrls());
+            metrics.setDuplicates(job.getDuplicates().get());
+            metrics.setOverflow(job.getOverflow().get());
+            metrics.setBeyondDepth(job.getBeyondDepth().get());
+            metrics.setOverBudget(job.getOverBudget().get());
+            metrics.setDisallowed(job.getDisallowed().get());
+            metrics.setSeenSetBytes(job.getSeenSetBytes());
+            metrics.setSeenSetApproximate(job.isSeenSetApproximate());
+            HostScheduler scheduler = job.getScheduler();
+            metrics.setConcurrency(scheduler.concurrencyLimit());
+            metrics.setDelayMillis(scheduler.delayMillis());
+            metrics.setLatencyMillis(scheduler.latencyMillis());
+            metrics.setRequestsPerSecond(scheduler.requestsPerSecond());
+            metrics.setThrottled(job.getThrottled().get());
+            metrics.setRetries(job.getRetries().get());
+            crawls.add(metrics);
+        }
+        return crawls;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopAll();
+        timer.shutdownNow();
+        fetchExecutor.shutdownNow();
+    }
+
+    private void fetch(CrawlJob job, String url, int depth, int attempt) {
+        HostScheduler scheduler = job.getScheduler();
+        try {
+            if (job.isCancelled()) {
+                return;
+            }
+
+            job.getRequests().incrementAndGet();
+            long started = System.nanoTime();
+            FetchedPage page = pageFetcher.fetch(url, job.getValidators().get(url));
+            if (page.isThrottled()) {
+                job.getThrottled().incrementAndGet();
+                scheduler.throttled(page.getRetryAfter());
+                if (retry(job, url, depth, attempt)) {
+                    return;
+                }
+            } else {
+                scheduler.responded(System.nanoTime() - started);
+            }
+            job.getPages().incrementAndGet();
+            throughput.mark();
+
+            job.getHandler().handle(job, page, depth);
+        } catch (SSLHandshakeException e) {
+            job.getFailed().incrementAndGet();
+            log.warn("SSL ошибка при индексации страницы (пропускаем): {}", url);
+        } catch (UnsupportedMimeTypeException e) {
+            log.debug("Неподдерживаемый тип файла (пропускаем): {}", url);
+        } catch (HttpTimeoutException e) {
+            job.getThrottled().incrementAndGet();
+            scheduler.throttled(null);
+            if (!retry(job, url, depth, attempt)) {
+                job.getFailed().incrementAndGet();
+                log.warn("Таймаут при индексации страницы (пропускаем): {}", url);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            job.getFailed().incrementAndGet();
+            log.debug("Ошибка при обработке URL: {}", url);
+        } finally {
+            scheduler.requestFinished();
+            job.release();
+        }
+    }
+
+    private boolean retry(CrawlJob job, String url, int depth, int attempt) {
+        if (attempt >= rateSettings.getMaxRetries() || job.isCancelled()) {
+            return false;
+        }
+        job.getRetries().incrementAndGet();
+        job.getScheduler().retry(job, url, depth, attempt + 1);
+        return true;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
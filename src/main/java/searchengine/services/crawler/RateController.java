@@ -0,0 +1,112 @@
+package searchengine.services.crawler;
+
+import searchengine.config.RateSettings;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Скорость запросов к одному хосту по схеме AIMD. Пока ответы приходят
+ * не медленнее обычного, число одновременных запросов растёт примерно на один
+ * за круг запросов, а пауза между ними сокращается на постоянный шаг. Ответ
+ * 429/503, таймаут или рост задержки вдвое сокращают параллельность и вдвое
+ * увеличивают паузу - не чаще раза за круг, чтобы пачка ошибок одного круга
+ * не обрушила скорость. Retry-After приостанавливает запросы к хосту.
+ * <p>
+ * Не потокобезопасен: вызывается под блокировкой {@link HostScheduler}.
+ */
+class RateController {
+
+    /** Сглаживание текущей задержки ответа. */
+    private static final double LATENCY_WEIGHT = 0.3;
+    /** Скорость, с которой обычная задержка подтягивается к возросшей. */
+    private static final double BASELINE_DRIFT = 0.01;
+    /** Наименьшая пауза после замедления, чтобы удвоение паузы 0 имело эффект. */
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final boolean adaptive;
+    private final int maxConcurrency;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final long delayStepNanos;
+    private final double latencyFactor;
+    private final long maxRetryAfterNanos;
+
+    private double concurrency;
+    private long delayNanos;
+    private double latencyNanos = -1;
+    private double baselineNanos = -1;
+    private long lastDecrease;
+    private long pausedUntil;
+
+    RateController(CrawlJob job, RateSettings settings) {
+        this.adaptive = settings.isAdaptive();
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(job.getMinDelayMillis(),
+                settings.isAdaptive() ? settings.getMinDelay().toMillis() : 0));
+        this.maxDelayNanos = Math.max(minDelayNanos, settings.getMaxDelay().toNanos());
+        this.maxConcurrency = Math.max(job.getConcurrency(), settings.getMaxConcurrency());
+        this.delayStepNanos = settings.getDelayStep().toNanos();
+        this.latencyFactor = Math.max(1.0, settings.getLatencyFactor());
+        this.maxRetryAfterNanos = settings.getMaxRetryAfter().toNanos();
+        this.concurrency = job.getConcurrency();
+        this.delayNanos = Math.max(minDelayNanos, TimeUnit.MILLISECONDS.toNanos(job.getDelayMillis()));
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /** Успешный ответ: при обычной задержке скорость растёт, при возросшей - снижается. */
+    void onResponse(long latency, long now) {
+        latencyNanos = latencyNanos < 0 ? latency : latencyNanos + (latency - latencyNanos) * LATENCY_WEIGHT;
+        baselineNanos = baselineNanos < 0 || latencyNanos < baselineNanos
+                ? latencyNanos
+                : baselineNanos + (latencyNanos - baselineNanos) * BASELINE_DRIFT;
+        if (!adaptive) {
+            return;
+        }
+        if (latencyNanos > baselineNanos * latencyFactor) {
+            decrease(now);
+        } else {
+            concurrency = Math.min(maxConcurrency, concurrency + 1 / concurrency);
+            delayNanos = Math.max(minDelayNanos, delayNanos - delayStepNanos);
+        }
+    }
+
+    /**
+     * Хост ответил 429/503 или не ответил вовремя. Пауза из Retry-After
+     * соблюдается и без адаптивной скорости.
+     */
+    void onThrottled(Duration retryAfter, long now) {
+        if (retryAfter != null && !retryAfter.isNegative()) {
+            pausedUntil = Math.max(pausedUntil, now + Math.min(retryAfter.toNanos(), maxRetryAfterNanos));
+        }
+        if (adaptive) {
+            decrease(now);
+        }
+    }
+
+    private void decrease(long now) {
+        long round = Math.max((long) Math.max(latencyNanos, 0), delayNanos);
+        if (now - lastDecrease < round) {
+            return;
+        }
+        lastDecrease = now;
+        concurrency = Math.max(1, concurrency / 2);
+        delayNanos = Math.min(maxDelayNanos, Math.max(delayNanos * 2, Math.max(minDelayNanos, MIN_BACKOFF_NANOS)));
+    }
+
+    int concurrencyLimit() {
+        return (int) concurrency;
+    }
+
+    long delayNanos() {
+        return delayNanos;
+    }
+
+    long pausedUntil() {
+        return pausedUntil;
+    }
+
+    /** Сглаженная задержка ответа, мс; 0 - ответов ещё не было. */
+    long latencyMillis() {
+        return latencyNanos < 0 ? 0 : TimeUnit.NANOSECONDS.toMillis((long) latencyNanos);
+    }
+}
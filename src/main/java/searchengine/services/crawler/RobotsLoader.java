@@ -0,0 +1,39 @@
+package searchengine.services.crawler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.HttpStatusException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Загружает robots.txt хоста сайта. Отсутствующий или недоступный файл
+ * не ограничивает обход.
+ */
+@Component
+@Slf4j
+public class RobotsLoader {
+
+    /** Часть файла сверх этого размера не читается, как и у поисковых роботов. */
+    private static final int MAX_ROBOTS_SIZE = 512 * 1024;
+
+    private final PageFetcher pageFetcher;
+
+    public RobotsLoader(PageFetcher pageFetcher) {
+        this.pageFetcher = pageFetcher;
+    }
+
+    public RobotsRules load(String baseUrl) {
+        String url = UrlCanonicalizer.originOf(UrlCanonicalizer.canonicalizeBase(baseUrl)) + "/robots.txt";
+        try (InputStream body = pageFetcher.openStream(url)) {
+            return RobotsRules.parse(new String(body.readNBytes(MAX_ROBOTS_SIZE), StandardCharsets.UTF_8));
+        } catch (HttpStatusException e) {
+            log.debug("robots.txt не найден ({}): {}", e.getStatusCode(), url);
+        } catch (IOException e) {
+            log.warn("Не удалось загрузить {}: {}", url, e.getMessage());
+        }
+        return RobotsRules.ALLOW_ALL;
+    }
+}
@@ -0,0 +1,165 @@
+package searchengine.services.crawler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Правила robots.txt для группы User-agent: *. Из нескольких подходящих
+ * правил Allow/Disallow действует самое длинное, при равной длине - Allow;
+ * поддерживаются шаблоны с * и $. Строки Sitemap собираются из всего файла.
+ */
+public final class RobotsRules {
+
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(List.of(), 0, List.of());
+
+    private final List<Rule> rules;
+    private final long crawlDelayMillis;
+    private final List<String> sitemaps;
+
+    private RobotsRules(List<Rule> rules, long crawlDelayMillis, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelayMillis = crawlDelayMillis;
+        this.sitemaps = sitemaps;
+    }
+
+    public static RobotsRules parse(String text) {
+        List<Rule> rules = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        long crawlDelayMillis = 0;
+        boolean groupApplies = false;
+        boolean previousWasAgent = false;
+
+        for (String line : text.split("\\r?\\n|\\r")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            if (field.equals("user-agent")) {
+                if (!previousWasAgent) {
+                    groupApplies = false;
+                }
+                groupApplies |= value.equals("*");
+                previousWasAgent = true;
+                continue;
+            }
+            previousWasAgent = false;
+            switch (field) {
+                case "allow", "disallow" -> {
+                    if (groupApplies && !value.isEmpty()) {
+                        rules.add(new Rule(value, field.equals("allow")));
+                    }
+                }
+                case "crawl-delay" -> {
+                    if (groupApplies) {
+                        crawlDelayMillis = parseDelay(value, crawlDelayMillis);
+                    }
+                }
+                case "sitemap" -> {
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return new RobotsRules(Collections.unmodifiableList(rules), crawlDelayMillis,
+                Collections.unmodifiableList(sitemaps));
+    }
+
+    /**
+     * Разрешён ли обход адреса; сравниваются путь и строка запроса.
+     */
+    public boolean isAllowed(String url) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String path = pathAndQuery(url);
+        Rule matched = null;
+        for (Rule rule : rules) {
+            if (rule.matches(path) && (matched == null
+                    || rule.length() > matched.length()
+                    || rule.length() == matched.length() && rule.allow)) {
+                matched = rule;
+            }
+        }
+        return matched == null || matched.allow;
+    }
+
+    /** Пауза между запросами из Crawl-delay, мс; 0 - не задана. */
+    public long getCrawlDelayMillis() {
+        return crawlDelayMillis;
+    }
+
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    private static long parseDelay(String value, long fallback) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds >= 0 && !Double.isInfinite(seconds) ? (long) (seconds * 1000) : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static String pathAndQuery(String url) {
+        String path = url.substring(UrlCanonicalizer.originOf(url).length());
+        return path.startsWith("/") ? path : "/" + path;
+    }
+
+    private static final class Rule {
+
+        private final String value;
+        private final boolean allow;
+        private final Pattern pattern;
+
+        Rule(String value, boolean allow) {
+            this.value = value;
+            this.allow = allow;
+            this.pattern = compile(value);
+        }
+
+        int length() {
+            return value.length();
+        }
+
+        boolean matches(String path) {
+            return pattern == null ? path.startsWith(value) : pattern.matcher(path).lookingAt();
+        }
+
+        /** Шаблон без * и $ проверяется как префикс, без регулярного выражения. */
+        private static Pattern compile(String value) {
+            boolean anchored = value.endsWith("$");
+            if (!anchored && value.indexOf('*') < 0) {
+                return null;
+            }
+            String body = anchored ? value.substring(0, value.length() - 1) : value;
+            StringBuilder regex = new StringBuilder();
+            String[] parts = body.split("\\*", -1);
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    regex.append(".*");
+                }
+                if (!parts[i].isEmpty()) {
+                    regex.append(Pattern.quote(parts[i]));
+                }
+            }
+            if (anchored) {
+                regex.append('$');
+            }
+            return Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package searchengine.services.crawler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.HttpStatusException;
+import org.springframework.stereotype.Component;
+import searchengine.config.SitesList;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Потоковое чтение карт сайта: urlset, индексы sitemapindex и сжатые gzip
+ * файлы. Документ разбирается StAX-парсером по мере загрузки, поэтому
+ * карта на десятки тысяч адресов не держится в памяти целиком. Карты,
+ * названные в robots.txt, читаются как есть; вложенные в индекс - только
+ * с хоста сайта.
+ */
+@Component
+@Slf4j
+public class SitemapReader {
+
+    /** Получатель адресов карты сайта; false прекращает чтение. */
+    @FunctionalInterface
+    public interface SitemapConsumer {
+        boolean accept(String url, Instant lastModified);
+    }
+
+    private final PageFetcher pageFetcher;
+    private final int maxSitemaps;
+
+    public SitemapReader(PageFetcher pageFetcher, SitesList sitesList) {
+        this.pageFetcher = pageFetcher;
+        this.maxSitemaps = sitesList.getRobots().getMaxSitemaps();
+    }
+
+    /**
+     * Читает перечисленные карты сайта и вложенные в их индексы; если robots.txt
+     * не назвал ни одной, пробует /sitemap.xml хоста. Возвращает число прочитанных адресов.
+     */
+    public int read(String baseUrl, List<String> sitemaps, SitemapConsumer consumer) {
+        String origin = UrlCanonicalizer.originOf(UrlCanonicalizer.canonicalizeBase(baseUrl));
+        Deque<String> queue = new ArrayDeque<>(sitemaps);
+        if (queue.isEmpty()) {
+            queue.add(origin + "/sitemap.xml");
+        }
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        Set<String> visited = new HashSet<>();
+        Progress progress = new Progress();
+        while (!queue.isEmpty() && !progress.stopped && visited.size() < maxSitemaps) {
+            String url = queue.poll();
+            if (!visited.add(url)) {
+                continue;
+            }
+            try (InputStream body = decompress(pageFetcher.openStream(url))) {
+                parse(factory.createXMLStreamReader(body), origin, queue, consumer, progress);
+            } catch (HttpStatusException e) {
+                log.debug("Карта сайта недоступна ({}): {}", e.getStatusCode(), url);
+            } catch (IOException | XMLStreamException e) {
+                log.warn("Не удалось прочитать карту сайта {}: {}", url, e.getMessage());
+            }
+        }
+        if (!queue.isEmpty() && !progress.stopped) {
+            log.warn("Прочитано карт сайта {}, остальные {} пропущены", visited.size(), queue.size());
+        }
+        return progress.entries;
+    }
+
+    private static void parse(XMLStreamReader reader, String origin, Deque<String> nested,
+                              SitemapConsumer consumer, Progress progress) throws XMLStreamException {
+        try {
+            String location = null;
+            Instant lastModified = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT && isSitemapElement(reader)) {
+                    switch (reader.getLocalName()) {
+                        case "url", "sitemap" -> {
+                            location = null;
+                            lastModified = null;
+                        }
+                        case "loc" -> location = reader.getElementText().trim();
+                        case "lastmod" -> lastModified = parseLastModified(reader.getElementText().trim());
+                        default -> {
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && location != null
+                        && isSitemapElement(reader)) {
+                    if (reader.getLocalName().equals("url")) {
+                        progress.entries++;
+                        if (!consumer.accept(location, lastModified)) {
+                            progress.stopped = true;
+                            return;
+                        }
+                        location = null;
+                    } else if (reader.getLocalName().equals("sitemap")) {
+                        if (isOnHost(location, origin)) {
+                            nested.add(location);
+                        } else {
+                            log.debug("Вложенная карта сайта на чужом хосте пропущена: {}", location);
+                        }
+                        location = null;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Вложенные карты читаются только с хоста сайта, иначе индекс карт мог бы
+     * заставить обход запрашивать произвольные чужие адреса.
+     */
+    static boolean isOnHost(String location, String origin) {
+        String canonical = UrlCanonicalizer.canonicalize(location);
+        return canonical != null && UrlCanonicalizer.originOf(canonical).equals(origin);
+    }
+
+    /**
+     * Элементы расширений (например, image:loc) в другом пространстве имён не учитываются.
+     */
+    private static boolean isSitemapElement(XMLStreamReader reader) {
+        String namespace = reader.getNamespaceURI();
+        return namespace == null || namespace.isEmpty() || namespace.contains("sitemaps.org");
+    }
+
+    /**
+     * Сжатую карту сайта узнаём по сигнатуре gzip, а не по расширению:
+     * сервер может отдать её и как sitemap.xml.gz, и с Content-Encoding.
+     */
+    private static InputStream decompress(InputStream body) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(body);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        return first == 0x1f && second == 0x8b ? new GZIPInputStream(buffered) : buffered;
+    }
+
+    /**
+     * Дата lastmod в формате W3C: только дата или дата и время со смещением.
+     */
+    static Instant parseLastModified(String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+            }
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC);
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Progress {
+        private int entries;
+        private boolean stopped;
+    }
+}
@@ -0,0 +1,138 @@
+package searchengine.services.crawler;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Приводит адреса к единому виду, чтобы тривиально разные ссылки на одну
+ * страницу обходились один раз: схема и хост в нижнем регистре, без порта
+ * по умолчанию, фрагмента, завершающего слэша, меток utm_* и параметров сессии.
+ */
+public final class UrlCanonicalizer {
+
+    private static final Set<String> IGNORED_PARAMETERS = Set.of(
+            "jsessionid", "phpsessid", "aspsessionid", "sessionid", "session_id", "sid",
+            "gclid", "yclid", "fbclid");
+
+    private UrlCanonicalizer() {
+    }
+
+    /**
+     * Возвращает канонический адрес или null, если адрес не http(s) или не разбирается.
+     */
+    public static String canonicalize(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        URI uri;
+        try {
+            uri = new URI(url.trim().replace(" ", "%20")).normalize();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+
+        String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!"http".equals(scheme) && !"https".equals(scheme) || uri.getHost() == null) {
+            return null;
+        }
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        int port = uri.getPort();
+        if (port == 80 && scheme.equals("http") || port == 443 && scheme.equals("https")) {
+            port = -1;
+        }
+
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        int sessionParameter = path.toLowerCase(Locale.ROOT).indexOf(";jsessionid=");
+        if (sessionParameter >= 0) {
+            path = path.substring(0, sessionParameter);
+        }
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        StringBuilder canonical = new StringBuilder(url.length())
+                .append(scheme).append("://").append(host);
+        if (port != -1) {
+            canonical.append(':').append(port);
+        }
+        canonical.append(path);
+        String query = filterQuery(uri.getRawQuery());
+        if (query != null) {
+            canonical.append('?').append(query);
+        }
+        return canonical.toString();
+    }
+
+    /**
+     * Канонический адрес сайта без завершающего слэша; пути страниц отсчитываются от него.
+     */
+    public static String canonicalizeBase(String baseUrl) {
+        String canonical = canonicalize(baseUrl);
+        if (canonical == null) {
+            return baseUrl;
+        }
+        return canonical.endsWith("/") ? canonical.substring(0, canonical.length() - 1) : canonical;
+    }
+
+    /**
+     * Путь страницы относительно адреса сайта, например "/news?page=2"; для главной - "/".
+     */
+    public static String pathOf(String canonicalUrl, String canonicalBase) {
+        String path = canonicalUrl.startsWith(canonicalBase)
+                ? canonicalUrl.substring(canonicalBase.length())
+                : canonicalUrl;
+        if (path.isEmpty()) {
+            return "/";
+        }
+        return path.charAt(0) == '/' ? path : "/" + path;
+    }
+
+    /**
+     * Схема, хост и порт канонического адреса, например для поиска robots.txt.
+     */
+    public static String originOf(String canonicalUrl) {
+        int scheme = canonicalUrl.indexOf("://");
+        int slash = canonicalUrl.indexOf('/', scheme + 3);
+        int query = canonicalUrl.indexOf('?', scheme + 3);
+        int end = slash < 0 ? query : query < 0 ? slash : Math.min(slash, query);
+        return end < 0 ? canonicalUrl : canonicalUrl.substring(0, end);
+    }
+
+    /**
+     * Относится ли канонический адрес к сайту: совпадает с его адресом или продолжается путём.
+     */
+    public static boolean isWithin(String canonicalUrl, String canonicalBase) {
+        if (!canonicalUrl.startsWith(canonicalBase)) {
+            return false;
+        }
+        if (canonicalUrl.length() == canonicalBase.length()) {
+            return true;
+        }
+        char next = canonicalUrl.charAt(canonicalBase.length());
+        return next == '/' || next == '?';
+    }
+
+    private static String filterQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+        StringJoiner kept = new StringJoiner("&");
+        for (String parameter : query.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int equals = parameter.indexOf('=');
+            String name = (equals < 0 ? parameter : parameter.substring(0, equals)).toLowerCase(Locale.ROOT);
+            if (!name.startsWith("utm_") && !IGNORED_PARAMETERS.contains(name)) {
+                kept.add(parameter);
+            }
+        }
+        return kept.length() == 0 ? null : kept.toString();
+    }
+}
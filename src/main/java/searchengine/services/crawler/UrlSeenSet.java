@@ -0,0 +1,170 @@
+package searchengine.services.crawler;
+
+/**
+ * Множество посещённых адресов сайта в виде 64-битных отпечатков в таблице
+ * с открытой адресацией: таблица заполнена не более чем наполовину, это
+ * 16-32 байта на адрес вместо сотен байт на строку в хеш-множестве.
+ * <p>
+ * Объём памяти ограничен. Когда таблице некуда расти, она либо заменяется
+ * фильтром Блума того же объёма (часть новых адресов может быть ошибочно
+ * принята за посещённые), либо перестаёт принимать новые адреса.
+ */
+class UrlSeenSet {
+
+    enum Result { ADDED, SEEN, FULL }
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int BLOOM_HASHES = 5;
+
+    private final long maxBytes;
+    private final boolean bloomFallback;
+
+    private long[] table = new long[INITIAL_CAPACITY];
+    private int size;
+    private long[] bloom;
+    private long bloomMask;
+    private long bloomInsertions;
+
+    UrlSeenSet(long maxBytes, boolean bloomFallback) {
+        this.maxBytes = Math.max(maxBytes, INITIAL_CAPACITY * Long.BYTES);
+        this.bloomFallback = bloomFallback;
+    }
+
+    synchronized Result add(String canonicalUrl) {
+        long fingerprint = fingerprint(canonicalUrl);
+        if (bloom != null) {
+            return addToBloom(fingerprint) ? Result.ADDED : Result.SEEN;
+        }
+
+        int slot = find(table, fingerprint);
+        if (table[slot] == fingerprint) {
+            return Result.SEEN;
+        }
+        if (size + 1 > table.length / 2) {
+            if ((long) table.length * 2 * Long.BYTES <= maxBytes) {
+                table = rehash(table, table.length * 2);
+                slot = find(table, fingerprint);
+            } else if (bloomFallback) {
+                switchToBloom();
+                return addToBloom(fingerprint) ? Result.ADDED : Result.SEEN;
+            } else {
+                return Result.FULL;
+            }
+        }
+        table[slot] = fingerprint;
+        size++;
+        return Result.ADDED;
+    }
+
+    /**
+     * Встречался ли адрес. Фильтр Блума может ошибочно ответить «да», но не «нет».
+     */
+    synchronized boolean contains(String canonicalUrl) {
+        long fingerprint = fingerprint(canonicalUrl);
+        if (bloom != null) {
+            return inBloom(fingerprint);
+        }
+        return table[find(table, fingerprint)] == fingerprint;
+    }
+
+    synchronized long size() {
+        return bloom != null ? bloomInsertions : size;
+    }
+
+    synchronized long memoryBytes() {
+        return (long) (bloom != null ? bloom.length : table.length) * Long.BYTES;
+    }
+
+    synchronized boolean isBloomFilter() {
+        return bloom != null;
+    }
+
+    private static int find(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        int slot = (int) mix(fingerprint) & mask;
+        while (table[slot] != 0 && table[slot] != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long[] rehash(long[] table, int capacity) {
+        long[] resized = new long[capacity];
+        for (long fingerprint : table) {
+            if (fingerprint != 0) {
+                resized[find(resized, fingerprint)] = fingerprint;
+            }
+        }
+        return resized;
+    }
+
+    private void switchToBloom() {
+        long bits = Math.min(Long.highestOneBit(maxBytes * 8), 1L << 36);
+        bloom = new long[(int) (bits / 64)];
+        bloomMask = (long) bloom.length * 64 - 1;
+        for (long fingerprint : table) {
+            if (fingerprint != 0) {
+                addToBloom(fingerprint);
+            }
+        }
+        table = null;
+    }
+
+    private boolean inBloom(long fingerprint) {
+        long hash = fingerprint;
+        long step = mix(fingerprint) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = hash & bloomMask;
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            hash += step;
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает false, если все биты отпечатка уже установлены.
+     */
+    private boolean addToBloom(long fingerprint) {
+        long hash = fingerprint;
+        long step = mix(fingerprint) | 1;
+        boolean added = false;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = hash & bloomMask;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((bloom[word] & mask) == 0) {
+                bloom[word] |= mask;
+                added = true;
+            }
+            hash += step;
+        }
+        if (added) {
+            bloomInsertions++;
+        }
+        return added;
+    }
+
+    /**
+     * 64-битный FNV-1a с перемешиванием; 0 зарезервирован под пустую ячейку.
+     */
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = mix(hash);
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
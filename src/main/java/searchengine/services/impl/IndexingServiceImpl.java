@@ -1,81 +1,166 @@
 package searchengine.services.impl;
 
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Connection;
 import org.jsoup.Jsoup;
-import org.jsoup.UnsupportedMimeTypeException;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.dao.DataAccessException;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.CannotCreateTransactionException;
-import org.springframework.transaction.UnexpectedRollbackException;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.dto.ApiResponse;
 import searchengine.model.*;
 import searchengine.repository.IndexRepository;
 import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageBatchRepository;
+import searchengine.repository.PageContentRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 import searchengine.services.IndexingService;
-
-import javax.net.ssl.SSLHandshakeException;
-import java.net.SocketTimeoutException;
+import searchengine.services.crawler.CrawlJob;
+import searchengine.services.crawler.CrawlerEngine;
+import searchengine.services.crawler.FrontierJournal;
+import searchengine.services.crawler.FrontierStore;
+import searchengine.services.crawler.PageFetcher;
+import searchengine.services.crawler.PageHandler;
+import searchengine.services.crawler.PageValidators;
+import searchengine.services.crawler.RobotsLoader;
+import searchengine.services.crawler.RobotsRules;
+import searchengine.services.crawler.SitemapReader;
+import searchengine.services.crawler.UrlCanonicalizer;
+import searchengine.services.index.IndexWriter;
+import searchengine.services.index.InvertedIndex;
+import searchengine.services.index.LemmaDictionary;
+import searchengine.services.pipeline.IndexingPipeline;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Переиндексация сайта строит новое поколение данных (отдельную запись site
+ * со своими страницами, леммами и индексом) рядом с действующим. Пока обход
+ * идёт, поиск работает по прежнему поколению; по завершении поколения
+ * меняются местами в одной транзакции, а старое удаляется в фоне.
+ * <p>
+ * В инкрементальном режиме сайт с действующим поколением обходится заново
+ * на месте: известные страницы запрашиваются условно, а переиндексируются
+ * только новые и изменившиеся.
+ * <p>
+ * Адреса, поставленные в очередь обхода, записываются в журнал
+ * ({@link FrontierStore}), поэтому остановленный или прерванный сбоем обход
+ * можно продолжить через {@link #resumeIndexing()}.
+ * <p>
+ * Перед обходом читается robots.txt сайта, а очередь дополняется адресами
+ * из его карт сайта ({@link SitemapReader}).
+ */
 @Service
 @Slf4j
 public class IndexingServiceImpl implements IndexingService {
 
+    /** Адреса карты сайта ставятся в очередь пачками, журнал сбрасывается после каждой. */
+    private static final int SITEMAP_BATCH = 500;
+
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
+    private final PageBatchRepository pageBatchRepository;
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
-    private final LemmaService lemmaService;
     private final SitesList sitesList;
+    private final CrawlerEngine crawlerEngine;
+    private final FrontierStore frontierStore;
+    private final PageFetcher pageFetcher;
+    private final RobotsLoader robotsLoader;
+    private final SitemapReader sitemapReader;
+    private final IndexWriter indexWriter;
+    private final LemmaDictionary lemmaDictionary;
+    private final InvertedIndex invertedIndex;
+    private final IndexingPipeline indexingPipeline;
+    private final SearchResultCache searchResultCache;
     private final IndexingServiceImpl self;
 
-    private final Map<String, ForkJoinPool> indexingPools = new ConcurrentHashMap<>();
     private final AtomicBoolean isIndexing = new AtomicBoolean(false);
+    private final AtomicInteger activeSites = new AtomicInteger();
+    private final ExecutorService generationCollector = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "site-generation-gc");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public IndexingServiceImpl(
             SiteRepository siteRepository,
             PageRepository pageRepository,
+            PageContentRepository pageContentRepository,
+            PageBatchRepository pageBatchRepository,
             LemmaRepository lemmaRepository,
             IndexRepository indexRepository,
-            LemmaService lemmaService,
             SitesList sitesList,
+            CrawlerEngine crawlerEngine,
+            FrontierStore frontierStore,
+            PageFetcher pageFetcher,
+            RobotsLoader robotsLoader,
+            SitemapReader sitemapReader,
+            IndexWriter indexWriter,
+            LemmaDictionary lemmaDictionary,
+            InvertedIndex invertedIndex,
+            IndexingPipeline indexingPipeline,
+            SearchResultCache searchResultCache,
             @Lazy IndexingServiceImpl self) {
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.pageBatchRepository = pageBatchRepository;
         this.lemmaRepository = lemmaRepository;
         this.indexRepository = indexRepository;
-        this.lemmaService = lemmaService;
         this.sitesList = sitesList;
+        this.crawlerEngine = crawlerEngine;
+        this.frontierStore = frontierStore;
+        this.pageFetcher = pageFetcher;
+        this.robotsLoader = robotsLoader;
+        this.sitemapReader = sitemapReader;
+        this.indexWriter = indexWriter;
+        this.lemmaDictionary = lemmaDictionary;
+        this.invertedIndex = invertedIndex;
+        this.indexingPipeline = indexingPipeline;
+        this.searchResultCache = searchResultCache;
         this.self = self;
     }
 
     @Override
     @Transactional
-    public ApiResponse startIndexing() {
+    public ApiResponse startIndexing(boolean incremental) {
         if (isIndexing.get()) {
             return new ApiResponse(false, "Индексация уже запущена");
         }
 
         isIndexing.set(true);
+        activeSites.set(sitesList.getSites().size());
 
         ExecutorService executorService = Executors.newFixedThreadPool(sitesList.getSites().size());
 
         for (Site site : sitesList.getSites()) {
-            executorService.submit(() -> indexSite(site));
+            executorService.submit(() -> {
+                SiteEntity liveGeneration = incremental ? siteRepository
+                        .findFirstByUrlAndStatusOrderByIdDesc(site.getUrl(), IndexingStatus.INDEXED)
+                        .orElse(null) : null;
+                if (liveGeneration != null) {
+                    refreshSite(site, liveGeneration);
+                } else {
+                    indexSite(site, null);
+                }
+            });
         }
 
         executorService.shutdown();
@@ -83,6 +168,34 @@ public class IndexingServiceImpl implements IndexingService {
         return new ApiResponse(true);
     }
 
+    @Override
+    public ApiResponse resumeIndexing() {
+        if (isIndexing.get()) {
+            return new ApiResponse(false, "Индексация уже запущена");
+        }
+
+        Map<Site, SiteEntity> interrupted = new LinkedHashMap<>();
+        for (Site site : sitesList.getSites()) {
+            siteRepository.findFirstByUrlAndStatusNotOrderByIdDesc(site.getUrl(), IndexingStatus.RETIRED)
+                    .filter(generation -> frontierStore.exists(generation.getId()))
+                    .ifPresent(generation -> interrupted.put(site, generation));
+        }
+        if (interrupted.isEmpty()) {
+            return new ApiResponse(false, "Нет прерванной индексации");
+        }
+
+        isIndexing.set(true);
+        activeSites.set(interrupted.size());
+
+        ExecutorService executorService = Executors.newFixedThreadPool(interrupted.size());
+
+        interrupted.forEach((site, generation) -> executorService.submit(() -> indexSite(site, generation)));
+
+        executorService.shutdown();
+
+        return new ApiResponse(true);
+    }
+
     @Override
     public ApiResponse stopIndexing() {
         if (!isIndexing.get()) {
@@ -91,34 +204,36 @@ public class IndexingServiceImpl implements IndexingService {
 
         isIndexing.set(false);
 
-        int poolsCount = indexingPools.size();
-        for (ForkJoinPool pool : indexingPools.values()) {
-            pool.shutdownNow();
-        }
-        indexingPools.clear();
-        log.info("ForkJoinPool остановлены, всего пулов было: {}", poolsCount);
+        crawlerEngine.stopAll();
+        log.info("Обход сайтов остановлен");
 
         for (Site site : sitesList.getSites()) {
             log.info("Обработка сайта из конфига: {}", site.getUrl());
-            SiteEntity siteEntity = siteRepository.findByUrl(site.getUrl()).orElse(null);
+            List<SiteEntity> generations = siteRepository.findAllByUrl(site.getUrl());
 
-            if (siteEntity == null) {
+            if (generations.isEmpty()) {
                 log.warn("SiteEntity не найден для URL: {}", site.getUrl());
                 continue;
             }
 
-            log.info("SiteEntity найден: id={}, url={}, status={}",
-                    siteEntity.getId(), siteEntity.getUrl(), siteEntity.getStatus());
+            boolean hasLiveGeneration = generations.stream()
+                    .anyMatch(generation -> generation.getStatus() == IndexingStatus.INDEXED);
+            for (SiteEntity siteEntity : generations) {
+                if (siteEntity.getStatus() != IndexingStatus.INDEXING) {
+                    continue;
+                }
+                if (hasLiveGeneration) {
+                    log.info("Новое поколение сайта {} (id={}) не достроено, поиск остаётся на прежнем",
+                            site.getUrl(), siteEntity.getId());
+                    continue;
+                }
 
-            if (siteEntity.getStatus() == IndexingStatus.INDEXING) {
                 log.info("Изменяем статус с INDEXING на INDEXED для сайта: {}", site.getUrl());
                 siteEntity.setStatus(IndexingStatus.INDEXED);
                 siteEntity.setStatusTime(LocalDateTime.now());
                 siteRepository.save(siteEntity);
+                searchResultCache.siteChanged(siteEntity.getId());
                 log.info("Статус сохранен в БД для сайта: {}", site.getUrl());
-            } else {
-                log.info("Статус не INDEXING (текущий статус: {}), пропускаем сайт: {}",
-                        siteEntity.getStatus(), site.getUrl());
             }
         }
         return new ApiResponse(true);
@@ -132,21 +247,24 @@ public class IndexingServiceImpl implements IndexingService {
         }
 
         try {
-            SiteEntity siteEntity = siteRepository.findByUrl(configSite.getUrl())
+            SiteEntity siteEntity = siteRepository
+                    .findFirstByUrlAndStatusOrderByIdDesc(configSite.getUrl(), IndexingStatus.INDEXED)
+                    .or(() -> siteRepository.findFirstByUrlAndStatusNotOrderByIdDesc(
+                            configSite.getUrl(), IndexingStatus.RETIRED))
                     .orElseGet(() -> createSiteEntity(configSite));
 
-            String path = url.replace(configSite.getUrl(), "");
-            if (path.isEmpty()) {
-                path = "/";
+            String canonicalUrl = UrlCanonicalizer.canonicalize(url);
+            if (canonicalUrl == null) {
+                return new ApiResponse(false, "Некорректный адрес страницы");
             }
+            String path = toPath(canonicalUrl, configSite.getUrl());
 
+            // прежняя версия страницы удаляется, когда записан индекс новой
             PageEntity existingPage = pageRepository.findFirstBySiteAndPath(siteEntity, path).orElse(null);
-            if (existingPage != null) {
-                self.deletePageIndexes(existingPage);
-                pageRepository.delete(existingPage);
-            }
-
-            indexSinglePage(siteEntity, url, path);
+            indexingPipeline.process(siteEntity, pageFetcher.fetch(canonicalUrl), path,
+                    existingPage != null ? existingPage.getId() : null);
+            indexWriter.flush(siteEntity.getId());
+            searchResultCache.siteChanged(siteEntity.getId());
 
             return new ApiResponse(true);
         } catch (Exception e) {
@@ -155,34 +273,100 @@ public class IndexingServiceImpl implements IndexingService {
         }
     }
 
-    private void indexSite(Site site) {
+    /**
+     * Строит поколение сайта обходом с главной страницы. Если передано
+     * прерванное поколение, обход продолжается по его журналу: адреса
+     * уже сохранённых страниц не запрашиваются, остальные ставятся в очередь.
+     */
+    private void indexSite(Site site, SiteEntity resumedGeneration) {
+        Integer siteId = null;
+        SiteEntity liveGeneration = null;
+        FrontierJournal journal = null;
         try {
-            self.deleteOldSiteData(site.getUrl());
-
-            SiteEntity siteEntity = createSiteEntity(site);
-            siteEntity.setStatus(IndexingStatus.INDEXING);
-            siteEntity = siteRepository.save(siteEntity);
-            
-            ForkJoinPool forkJoinPool = new ForkJoinPool(2);
-            indexingPools.put(site.getUrl(), forkJoinPool);
-
-            Set<String> visitedUrls = ConcurrentHashMap.newKeySet();
-            SiteIndexingTask task = new SiteIndexingTask(site.getUrl(), site.getUrl(), siteEntity, visitedUrls);
-
-            forkJoinPool.invoke(task);
+            SiteEntity siteEntity;
+            if (resumedGeneration == null) {
+                self.deleteStaleGenerations(site.getUrl());
+                liveGeneration = siteRepository
+                        .findFirstByUrlAndStatusOrderByIdDesc(site.getUrl(), IndexingStatus.INDEXED)
+                        .orElse(null);
+                siteEntity = createSiteEntity(site);
+            } else {
+                liveGeneration = siteRepository
+                        .findFirstByUrlAndStatusOrderByIdDesc(site.getUrl(), IndexingStatus.INDEXED)
+                        .filter(generation -> !generation.getId().equals(resumedGeneration.getId()))
+                        .orElse(null);
+                siteEntity = resumedGeneration;
+                siteEntity.setStatus(IndexingStatus.INDEXING);
+                siteEntity.setLastError(null);
+                siteEntity.setStatusTime(LocalDateTime.now());
+                siteRepository.save(siteEntity);
+                searchResultCache.siteChanged(siteEntity.getId());
+            }
+            siteId = siteEntity.getId();
+            lemmaDictionary.open(siteId);
+            indexWriter.startGeneration(siteId);
+
+            CrawlJob job = newCrawlJob(site, (crawlJob, page, depth) -> indexingPipeline.submit(crawlJob,
+                    siteEntity, page, toPath(page.getUrl(), site.getUrl()), depth));
+            if (resumedGeneration != null) {
+                restoreFrontier(job, siteEntity, site);
+            }
+            journal = frontierStore.open(siteId, resumedGeneration != null);
+            job.setJournal(journal);
+            crawlWithSitemaps(job, site, resumedGeneration == null);
+            indexWriter.flush(siteId);
+            invertedIndex.persistSite(siteId);
+
+            log.info("Обход сайта {} завершен: страниц {}, HTTP-запросов {}, повторных ссылок {}, " +
+                            "лемм в словаре {} (~{} КБ)",
+                    site.getUrl(), job.getPages().get(), job.getRequests().get(), job.getDuplicates().get(),
+                    lemmaDictionary.size(siteId), lemmaDictionary.memoryFootprint(siteId) / 1024);
+            if (job.getBeyondDepth().get() > 0 || job.getOverBudget().get() > 0) {
+                log.info("Сайт {}: глубже {} уровней ссылок {}, сверх бюджета {} страниц - {}",
+                        site.getUrl(), job.getMaxDepth(), job.getBeyondDepth().get(),
+                        job.getMaxPages(), job.getOverBudget().get());
+            }
+            if (job.getThrottled().get() > 0) {
+                log.info("Сайт {}: отказов и таймаутов {}, повторных запросов {}",
+                        site.getUrl(), job.getThrottled().get(), job.getRetries().get());
+            }
+            if (job.getDisallowed().get() > 0) {
+                log.info("Сайт {}: запрещено robots.txt адресов {}", site.getUrl(), job.getDisallowed().get());
+            }
+            if (job.getOverflow().get() > 0) {
+                log.warn("Сайт {}: множество посещённых адресов заполнено, отброшено новых адресов {}",
+                        site.getUrl(), job.getOverflow().get());
+            }
 
             if (isIndexing.get()) {
-                siteEntity.setStatus(IndexingStatus.INDEXED);
+                closeJournal(journal, siteId, true);
+                if (liveGeneration != null) {
+                    self.swapGenerations(liveGeneration, siteEntity);
+                    searchResultCache.siteChanged(liveGeneration.getId());
+                    log.info("Сайт {}: поиск переключен на новое поколение (id={} вместо id={})",
+                            site.getUrl(), siteId, liveGeneration.getId());
+                    collectGeneration(liveGeneration);
+                } else {
+                    siteEntity.setStatus(IndexingStatus.INDEXED);
+                    siteEntity.setStatusTime(LocalDateTime.now());
+                    siteRepository.save(siteEntity);
+                }
+            } else if (liveGeneration != null) {
+                siteEntity.setStatus(IndexingStatus.FAILED);
+                siteEntity.setLastError("Индексация остановлена пользователем");
                 siteEntity.setStatusTime(LocalDateTime.now());
                 siteRepository.save(siteEntity);
             }
-
-            indexingPools.remove(site.getUrl());
+            searchResultCache.siteChanged(siteId);
 
         } catch (Exception e) {
             log.error("Ошибка при индексации сайта: {}", site.getUrl(), e);
-            SiteEntity siteEntity = siteRepository.findByUrl(site.getUrl()).orElse(null);
-            if (siteEntity != null) {
+            SiteEntity siteEntity = siteId == null ? null : siteRepository.findById(siteId).orElse(null);
+            if (siteEntity != null && liveGeneration != null) {
+                liveGeneration.setLastError(e.getMessage());
+                siteRepository.save(liveGeneration);
+                retireGeneration(siteEntity);
+            } else if (siteEntity != null) {
                 if (isIndexing.get()) {
                     siteEntity.setStatus(IndexingStatus.FAILED);
                     siteEntity.setLastError(e.getMessage());
@@ -191,227 +375,424 @@ public class IndexingServiceImpl implements IndexingService {
                 }
             }
         } finally {
-            if (indexingPools.values().stream().allMatch(ForkJoinPool::isQuiescent)) {
+            if (siteId != null) {
+                closeJournal(journal, siteId, false);
+                lemmaDictionary.evict(siteId);
+                indexWriter.finishGeneration(siteId);
+            }
+            if (activeSites.decrementAndGet() == 0) {
                 isIndexing.set(false);
             }
         }
     }
 
-    @Transactional
-    public void deleteOldSiteData(String url) {
-        SiteEntity siteEntity = siteRepository.findByUrl(url).orElse(null);
-        if (siteEntity != null) {
-            indexRepository.deleteBySite(siteEntity.getId());
-            lemmaRepository.deleteBySite(siteEntity);
-            pageRepository.deleteBySite(siteEntity);
-            siteRepository.delete(siteEntity);
+    /**
+     * Запускает обход и, пока он идёт, дополняет очередь адресами из карт сайта
+     * с глубиной 1, так что загрузка страниц начинается, не дожидаясь разбора
+     * ссылок главной. Продолженный обход берёт эти адреса из журнала.
+     */
+    private void crawlWithSitemaps(CrawlJob job, Site site, boolean readSitemaps) {
+        CompletableFuture<Void> completion;
+        job.retain();
+        try {
+            completion = crawlerEngine.crawl(job);
+            if (readSitemaps && sitesList.getRobots().isSitemaps()) {
+                List<String> batch = new ArrayList<>();
+                int read = sitemapReader.read(site.getUrl(), job.getRobots().getSitemaps(), (url, lastModified) -> {
+                    batch.add(url);
+                    if (batch.size() >= SITEMAP_BATCH) {
+                        job.offerAll(batch, 1);
+                        batch.clear();
+                    }
+                    return job.canAccept();
+                });
+                job.offerAll(batch, 1);
+                log.info("Сайт {}: из карт сайта прочитано адресов {}", site.getUrl(), read);
+            }
+        } finally {
+            job.release();
         }
+        completion.join();
     }
 
-    private SiteEntity createSiteEntity(Site site) {
-        SiteEntity siteEntity = new SiteEntity();
-        siteEntity.setUrl(site.getUrl());
-        siteEntity.setName(site.getName());
-        siteEntity.setStatus(IndexingStatus.INDEXING);
-        siteEntity.setStatusTime(LocalDateTime.now());
-        return siteRepository.save(siteEntity);
+    /**
+     * Делит адреса журнала прерванного обхода на загруженные (страница есть в БД)
+     * и ожидающие; первые отмечаются посещёнными, вторые становятся начальными.
+     * Страница, чьи строки индекса не успели записаться до сбоя, удаляется
+     * и загружается заново, как и недописанная новая версия известной страницы.
+     */
+    private void restoreFrontier(CrawlJob job, SiteEntity siteEntity, Site site) throws IOException {
+        int siteId = siteEntity.getId();
+        pageBatchRepository.deleteUnfinishedReplacements(siteId);
+        Map<String, Integer> unindexed = pageBatchRepository.findUnindexedPages(siteId);
+        for (Integer pageId : unindexed.values()) {
+            self.removePage(siteEntity, pageId);
+        }
+        Set<String> savedPaths = new HashSet<>();
+        pageBatchRepository.findPageStates(siteId, page -> savedPaths.add(page.getPath()));
+
+        List<String> visited = new ArrayList<>();
+        Map<String, Integer> pending = new LinkedHashMap<>();
+        frontierStore.read(siteId).forEach((url, depth) -> {
+            if (savedPaths.contains(toPath(url, site.getUrl()))) {
+                visited.add(url);
+            } else {
+                pending.put(url, depth);
+            }
+        });
+        job.markVisited(visited);
+        job.setSeeds(pending);
+        log.info("Сайт {}: обход продолжается, загружено страниц {}, в очереди {} (из них без индекса {})",
+                site.getUrl(), visited.size(), pending.size(), unindexed.size());
     }
 
-    private void indexSinglePage(SiteEntity siteEntity, String fullUrl, String path) {
-        try {
-            Thread.sleep(150);
+    /**
+     * Закрывает журнал обхода. Журнал завершённого обхода, как и неполный
+     * журнал, удаляется; журнал остановленного обхода остаётся для продолжения.
+     */
+    private void closeJournal(FrontierJournal journal, int siteId, boolean completed) {
+        if (journal == null) {
+            return;
+        }
+        journal.close();
+        if (completed || journal.isFailed()) {
+            frontierStore.delete(siteId);
+        }
+    }
 
-            Connection.Response response = Jsoup.connect(fullUrl)
-                    .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36")
-                    .referrer("http://www.google.com")
-                    .timeout(10000)
-                    .ignoreHttpErrors(true)
-                    .execute();
+    /**
+     * Повторно обходит сайт в действующем поколении, начиная с главной страницы
+     * и адресов карты сайта. Известные страницы запрашиваются с их ETag
+     * и Last-Modified; ответ 304 или совпавший хеш содержимого означают, что
+     * страница не изменилась: она не разбирается, а её ссылки ставятся в очередь
+     * из ответа или сохранённой версии. Изменившаяся страница индексируется заново
+     * и заменяет прежнюю версию, когда записан её индекс; ответившие 404 или 410
+     * удаляются; при остальных ответах (5xx, 429 после повторов) сохранённая
+     * страница остаётся. Страница, для которой lastmod карты сайта не новее
+     * сохранённого Last-Modified, не запрашивается вовсе.
+     * <p>
+     * Если обход прошёл полностью, известные страницы, до которых он не дошёл
+     * (на них больше нет ссылок), удаляются.
+     */
+    private void refreshSite(Site site, SiteEntity liveGeneration) {
+        int siteId = liveGeneration.getId();
+        try {
+            int unfinished = pageBatchRepository.deleteUnfinishedReplacements(siteId);
+            Map<String, Integer> unindexed = pageBatchRepository.findUnindexedPages(siteId);
+            for (Integer pageId : unindexed.values()) {
+                self.removePage(liveGeneration, pageId);
+            }
+            if (unfinished > 0 || !unindexed.isEmpty()) {
+                log.info("Сайт {}: удалено незавершённых новых версий {}, страниц без индекса {}",
+                        site.getUrl(), unfinished, unindexed.size());
+            }
 
-            int statusCode = response.statusCode();
-            String html = response.body();
+            Map<String, PageBatchRepository.PageState> knownPages = new HashMap<>();
+            Map<String, PageValidators> validators = new HashMap<>();
+            pageBatchRepository.findPageStates(siteId, page -> {
+                String url = toUrl(page.getPath(), site.getUrl());
+                if (url == null) {
+                    return;
+                }
+                knownPages.put(toPath(url, site.getUrl()), page);
+                if (page.getEtag() != null || page.getLastModified() != null) {
+                    validators.put(url, new PageValidators(page.getEtag(), page.getLastModified()));
+                }
+            });
+            lemmaDictionary.open(siteId);
 
-            PageEntity pageEntity;
-            try {
-                pageEntity = new PageEntity();
-                pageEntity.setSite(siteEntity);
-                pageEntity.setPath(path);
-                pageEntity.setCode(statusCode);
-                pageEntity.setContent(html);
-                pageEntity = pageRepository.save(pageEntity);
-            } catch (DataIntegrityViolationException e) {
-                log.info("Страница уже существует (пропускаем дубликат): {}", fullUrl);
-                return;
+            Map<RefreshOutcome, AtomicInteger> outcomes = new EnumMap<>(RefreshOutcome.class);
+            for (RefreshOutcome outcome : RefreshOutcome.values()) {
+                outcomes.put(outcome, new AtomicInteger());
             }
-
-            if (statusCode >= 200 && statusCode < 400) {
-                boolean indexed = false;
-                int retries = 3;
-                for (int attempt = 1; attempt <= retries && !indexed; attempt++) {
-                    try {
-                        self.indexPageContent(pageEntity, html);
-                        indexed = true;
-                    } catch (DataAccessException e) {
-                        boolean isDeadlock = e.getMessage() != null &&
-                                           e.getMessage().contains("Deadlock found");
-
-                        if (isDeadlock && attempt < retries) {
-                            log.warn("Deadlock при индексации (попытка {}/{}): {}", attempt, retries, fullUrl);
-                            try {
-                                Thread.sleep(50 + new Random().nextInt(100));
-                            } catch (InterruptedException ie) {
-                                Thread.currentThread().interrupt();
-                                break;
-                            }
-                        } else if (isDeadlock) {
-                            log.error("Не удалось проиндексировать после {} попыток (deadlock): {}", retries, fullUrl);
-                            break;
-                        } else {
-                            log.warn("Не удалось проиндексировать контент страницы (БД ошибка): {}", fullUrl);
-                            break;
+            CrawlJob job = newCrawlJob(site, (crawlJob, page, depth) -> {
+                String path = toPath(page.getUrl(), site.getUrl());
+                PageBatchRepository.PageState known = knownPages.get(path);
+                RefreshOutcome outcome = RefreshOutcome.of(known, page);
+                outcomes.get(outcome).incrementAndGet();
+                switch (outcome) {
+                    case ADDED:
+                        indexingPipeline.submit(crawlJob, liveGeneration, page, path, depth);
+                        break;
+                    case CHANGED:
+                        indexingPipeline.submit(crawlJob, liveGeneration, page, path, depth, known.getPageId());
+                        break;
+                    case SAME_CONTENT:
+                        if (!Objects.equals(known.getEtag(), page.getEtag())
+                                || !Objects.equals(known.getLastModified(), page.getLastModified())) {
+                            pageBatchRepository.updateValidators(known.getPageId(),
+                                    page.getEtag(), page.getLastModified());
                         }
-                    } catch (RuntimeException e) {
-                        log.warn("Не удалось проиндексировать контент страницы: {}", fullUrl);
+                        crawlJob.offerAll(IndexingPipeline.extractLinks(Jsoup.parse(page.getHtml(), page.getUrl())),
+                                depth + 1);
+                        break;
+                    case NOT_MODIFIED:
+                    case FAILED:
+                        offerStoredLinks(crawlJob, known.getPageId(), page.getUrl(), depth + 1);
+                        break;
+                    case GONE:
+                        self.removePage(liveGeneration, known.getPageId());
                         break;
-                    }
                 }
+            });
+            Map<String, Integer> seeds = new LinkedHashMap<>();
+            if (sitesList.getRobots().isSitemaps()) {
+                Map<String, Integer> notModified = new LinkedHashMap<>();
+                AtomicInteger newUrls = new AtomicInteger();
+                sitemapReader.read(site.getUrl(), job.getRobots().getSitemaps(), (url, lastModified) -> {
+                    String canonical = UrlCanonicalizer.canonicalize(url);
+                    if (canonical == null || !UrlCanonicalizer.isWithin(canonical, job.getBaseUrl())) {
+                        return true;
+                    }
+                    PageBatchRepository.PageState known = knownPages.get(toPath(canonical, site.getUrl()));
+                    if (known != null && notModifiedSince(lastModified, known.getLastModified())) {
+                        notModified.put(canonical, known.getPageId());
+                    } else if (seeds.putIfAbsent(canonical, 1) == null && known == null) {
+                        newUrls.incrementAndGet();
+                    }
+                    return true;
+                });
+                job.markVisited(notModified.keySet());
+                notModified.forEach((url, pageId) -> storedLinks(pageId, url)
+                        .forEach(link -> seeds.putIfAbsent(link, 2)));
+                outcomes.get(RefreshOutcome.NOT_MODIFIED).addAndGet(notModified.size());
+                log.info("Сайт {}: по карте сайта не изменились {} страниц, новых адресов в очереди {}",
+                        site.getUrl(), notModified.size(), newUrls.get());
             }
-            if (isIndexing.get()) {
-                siteEntity.setStatusTime(LocalDateTime.now());
-                siteRepository.save(siteEntity);
+            job.setSeeds(seeds);
+            job.setValidators(validators);
+            crawlerEngine.crawl(job).join();
+            indexWriter.flush(siteId);
+
+            int unlinked = 0;
+            if (isCompleteCrawl(job)) {
+                for (Map.Entry<String, PageBatchRepository.PageState> entry : knownPages.entrySet()) {
+                    if (!job.isSeen(toUrl(entry.getKey(), site.getUrl()))) {
+                        self.removePage(liveGeneration, entry.getValue().getPageId());
+                        unlinked++;
+                    }
+                }
+            } else {
+                log.info("Сайт {}: обход неполный, страницы без ссылок на них не удаляются", site.getUrl());
             }
-
-        } catch (SSLHandshakeException e) {
-            log.warn("SSL ошибка при индексации страницы (пропускаем): {}", fullUrl);
-        } catch (UnsupportedMimeTypeException e) {
-            log.debug("Неподдерживаемый тип файла (пропускаем): {}", fullUrl);
-        } catch (SocketTimeoutException e) {
-            log.warn("Таймаут при индексации страницы (пропускаем): {}", fullUrl);
-        } catch (DataIntegrityViolationException e) {
-            log.debug("Дубликат страницы (пропускаем): {}", fullUrl);
-        } catch (CannotCreateTransactionException e) {
-            log.error("Ошибка соединения с БД при индексации страницы: {}", fullUrl);
-            throw new RuntimeException("DB Connection error", e);
-        } catch (UnexpectedRollbackException e) {
-            log.warn("Транзакция откачена при индексации страницы (пропускаем): {}", fullUrl);
+            invertedIndex.persistSite(siteId);
+
+            log.info("Повторный обход сайта {} завершен: без изменений {}, изменено {}, новых {}, удалено {}, " +
+                            "без ссылок {}, не загружено {}, HTTP-запросов {}",
+                    site.getUrl(),
+                    outcomes.get(RefreshOutcome.NOT_MODIFIED).get() + outcomes.get(RefreshOutcome.SAME_CONTENT).get(),
+                    outcomes.get(RefreshOutcome.CHANGED).get(), outcomes.get(RefreshOutcome.ADDED).get(),
+                    outcomes.get(RefreshOutcome.GONE).get(), unlinked,
+                    outcomes.get(RefreshOutcome.FAILED).get() + job.getFailed().get(), job.getRequests().get());
         } catch (Exception e) {
-            log.error("Ошибка при индексации страницы: {}", fullUrl, e);
+            log.error("Ошибка при повторном обходе сайта: {}", site.getUrl(), e);
+            liveGeneration.setLastError(e.getMessage());
+            siteRepository.save(liveGeneration);
+        } finally {
+            searchResultCache.siteChanged(siteId);
+            lemmaDictionary.evict(siteId);
+            if (activeSites.decrementAndGet() == 0) {
+                isIndexing.set(false);
+            }
         }
     }
 
-    @Transactional
-    public void indexPageContent(PageEntity pageEntity, String html) {
-        try {
-            Document doc = Jsoup.parse(html);
-            String text = doc.text();
+    /**
+     * Дошёл ли обход до всех страниц, на которые есть ссылки: он не остановлен,
+     * не упёрся в бюджет или память и загрузил все адреса без ошибок.
+     */
+    private boolean isCompleteCrawl(CrawlJob job) {
+        return isIndexing.get() && !job.isCancelled() && job.getFailed().get() == 0
+                && job.getOverBudget().get() == 0 && job.getOverflow().get() == 0;
+    }
 
-            Map<String, Integer> lemmas = lemmaService.collectLemmas(text);
+    /**
+     * Ставит в очередь ссылки сохранённой версии страницы, которую обход не разбирает:
+     * иначе он не дошёл бы до страниц, на которые ссылается только она.
+     */
+    private void offerStoredLinks(CrawlJob job, int pageId, String url, int depth) {
+        job.offerAll(storedLinks(pageId, url), depth);
+    }
 
-            for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
-                String lemmaText = entry.getKey();
-                Integer count = entry.getValue();
+    private List<String> storedLinks(int pageId, String url) {
+        return pageContentRepository.findById(pageId)
+                .map(content -> IndexingPipeline.extractLinks(Jsoup.parse(content.getContent(), url)))
+                .orElse(List.of());
+    }
 
-                lemmaRepository.insertOrUpdateLemma(pageEntity.getSite().getId(), lemmaText, 1);
-            }
+    /**
+     * Делает новое поколение сайта действующим, а прежнее помечает
+     * {@link IndexingStatus#RETIRED}. Поиск видит либо одно, либо другое.
+     */
+    @Transactional
+    public void swapGenerations(SiteEntity liveGeneration, SiteEntity newGeneration) {
+        LocalDateTime now = LocalDateTime.now();
+        liveGeneration.setStatus(IndexingStatus.RETIRED);
+        liveGeneration.setStatusTime(now);
+        newGeneration.setStatus(IndexingStatus.INDEXED);
+        newGeneration.setStatusTime(now);
+        siteRepository.save(liveGeneration);
+        siteRepository.save(newGeneration);
+    }
 
-            List<String> lemmaTexts = new ArrayList<>(lemmas.keySet());
-            List<LemmaEntity> lemmaEntities = lemmaRepository.findBySiteIdAndLemmaIn(
-                    pageEntity.getSite().getId(), lemmaTexts);
-
-            for (LemmaEntity lemmaEntity : lemmaEntities) {
-                Integer count = lemmas.get(lemmaEntity.getLemma());
-                if (count != null) {
-                    IndexEntity indexEntity = new IndexEntity();
-                    indexEntity.setPage(pageEntity);
-                    indexEntity.setLemma(lemmaEntity);
-                    indexEntity.setRankValue(count.floatValue());
-                    indexRepository.save(indexEntity);
-                }
+    /**
+     * Удаляет поколения сайта, оставшиеся от прерванных запусков; действующее
+     * поколение и поколения, ожидающие фонового удаления, не трогаются.
+     */
+    @Transactional
+    public void deleteStaleGenerations(String url) {
+        SiteEntity liveGeneration = siteRepository
+                .findFirstByUrlAndStatusOrderByIdDesc(url, IndexingStatus.INDEXED)
+                .orElse(null);
+        for (SiteEntity generation : siteRepository.findAllByUrl(url)) {
+            boolean live = liveGeneration != null && liveGeneration.getId().equals(generation.getId());
+            if (!live && generation.getStatus() != IndexingStatus.RETIRED) {
+                deleteSiteData(generation);
             }
-        } catch (DataAccessException e) {
-            log.warn("Ошибка БД при индексировании контента страницы: {}", e.getMessage());
-            throw e;
-        } catch (Exception e) {
-            log.error("Ошибка при индексировании контента страницы", e);
-            throw new RuntimeException(e);
         }
     }
 
     @Transactional
-    public void deletePageIndexes(PageEntity page) {
-        indexRepository.deleteByPage(page);
+    public void deleteSiteData(SiteEntity siteEntity) {
+        frontierStore.delete(siteEntity.getId());
+        indexWriter.discard(siteEntity.getId());
+        lemmaDictionary.evict(siteEntity.getId());
+        invertedIndex.dropSite(siteEntity.getId());
+        searchResultCache.siteChanged(siteEntity.getId());
+        indexRepository.deleteBySite(siteEntity.getId());
+        lemmaRepository.deleteBySite(siteEntity);
+        pageContentRepository.deleteBySite(siteEntity.getId());
+        pageRepository.deleteBySite(siteEntity);
+        siteRepository.delete(siteEntity);
     }
 
-    private Site findSiteByUrl(String url) {
-        for (Site site : sitesList.getSites()) {
-            if (url.startsWith(site.getUrl())) {
-                return site;
-            }
-        }
-        return null;
+    @EventListener(ApplicationReadyEvent.class)
+    public void collectRetiredGenerations() {
+        siteRepository.findAllByStatus(IndexingStatus.RETIRED).forEach(this::collectGeneration);
     }
 
-    private class SiteIndexingTask extends RecursiveAction {
-        private final String url;
-        private final String baseUrl;
-        private final SiteEntity siteEntity;
-        private final Set<String> visitedUrls;
-
-        public SiteIndexingTask(String url, String baseUrl, SiteEntity siteEntity, Set<String> visitedUrls) {
-            this.url = url;
-            this.baseUrl = baseUrl;
-            this.siteEntity = siteEntity;
-            this.visitedUrls = visitedUrls;
-        }
+    @PreDestroy
+    public void shutdown() {
+        generationCollector.shutdownNow();
+    }
 
-        @Override
-        protected void compute() {
-            if (!isIndexing.get() || !visitedUrls.add(url)) {
-                return;
-            }
+    private void retireGeneration(SiteEntity generation) {
+        generation.setStatus(IndexingStatus.RETIRED);
+        generation.setStatusTime(LocalDateTime.now());
+        siteRepository.save(generation);
+        collectGeneration(generation);
+    }
 
+    private void collectGeneration(SiteEntity generation) {
+        generationCollector.submit(() -> {
             try {
-                String path = url.replace(baseUrl, "");
-                if (path.isEmpty()) {
-                    path = "/";
-                }
-
-                indexSinglePage(siteEntity, url, path);
+                long start = System.currentTimeMillis();
+                self.deleteSiteData(generation);
+                log.info("Удалено прежнее поколение сайта {} (id={}) за {} мс",
+                        generation.getUrl(), generation.getId(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("Не удалось удалить поколение сайта {} (id={})", generation.getUrl(), generation.getId(), e);
+            }
+        });
+    }
 
-                Document doc = Jsoup.connect(url)
-                        .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36")
-                        .referrer("http://www.google.com")
-                        .timeout(10000)
-                        .ignoreHttpErrors(true)
-                        .get();
+    private SiteEntity createSiteEntity(Site site) {
+        SiteEntity siteEntity = new SiteEntity();
+        siteEntity.setUrl(site.getUrl());
+        siteEntity.setName(site.getName());
+        siteEntity.setStatus(IndexingStatus.INDEXING);
+        siteEntity.setStatusTime(LocalDateTime.now());
+        return siteRepository.save(siteEntity);
+    }
 
-                Elements links = doc.select("a[href]");
-                List<SiteIndexingTask> tasks = new ArrayList<>();
+    /**
+     * Удаляет страницу вместе со строками индекса и уменьшает частоту её лемм.
+     * Индекс в памяти и кэш результатов поиска по сайту обновляются после
+     * фиксации транзакции: при откате страница остаётся и в БД, и в выдаче.
+     */
+    @Transactional
+    public void removePage(SiteEntity siteEntity, Integer pageId) {
+        indexRepository.decrementFrequenciesByPage(pageId);
+        indexRepository.deleteByPageId(pageId);
+        pageContentRepository.deleteByPageId(pageId);
+        pageRepository.deleteById(pageId);
+        afterCommit(() -> {
+            invertedIndex.removePage(siteEntity.getId(), pageId);
+            searchResultCache.siteChanged(siteEntity.getId());
+        });
+    }
 
-                for (Element link : links) {
-                    String absUrl = link.absUrl("href");
-                    if (isValidUrl(absUrl)) {
-                        tasks.add(new SiteIndexingTask(absUrl, baseUrl, siteEntity, visitedUrls));
-                    }
-                }
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 
-                invokeAll(tasks);
+    /**
+     * Задание обхода с правилами robots.txt сайта; Crawl-delay, не превышающий
+     * заданного предела, увеличивает паузу между запросами.
+     */
+    private CrawlJob newCrawlJob(Site site, PageHandler handler) {
+        RobotsRules robots = sitesList.getRobots().isEnabled()
+                ? robotsLoader.load(site.getUrl())
+                : RobotsRules.ALLOW_ALL;
+        long crawlDelay = Math.min(robots.getCrawlDelayMillis(),
+                sitesList.getRobots().getMaxCrawlDelay().toMillis());
+        CrawlJob job = new CrawlJob(site.getUrl(), sitesList.getConcurrency(site),
+                Math.max(sitesList.getDelay(site), crawlDelay), sitesList.getSeenSet(), handler);
+        job.setRobots(robots);
+        job.setMinDelayMillis(crawlDelay);
+        job.setMaxDepth(sitesList.getMaxDepth(site));
+        job.setMaxPages(sitesList.getMaxPages(site));
+        return job;
+    }
 
-            } catch (SSLHandshakeException e) {
-                log.debug("SSL ошибка при обработке URL (пропускаем): {}", url);
-            } catch (UnsupportedMimeTypeException e) {
-                log.debug("Неподдерживаемый тип файла при обработке URL (пропускаем): {}", url);
-            } catch (SocketTimeoutException e) {
-                log.debug("Таймаут при обработке URL (пропускаем): {}", url);
-            } catch (Exception e) {
-                log.debug("Ошибка при обработке URL: {}", url);
-            }
+    /**
+     * Не изменилась ли страница по данным карты сайта: lastmod не новее
+     * Last-Modified, сохранённого при прошлой загрузке.
+     */
+    private static boolean notModifiedSince(Instant sitemapLastModified, String lastModifiedHeader) {
+        if (sitemapLastModified == null || lastModifiedHeader == null) {
+            return false;
         }
+        try {
+            Instant lastModified = ZonedDateTime.parse(lastModifiedHeader, DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant();
+            return !sitemapLastModified.isAfter(lastModified);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Путь страницы по её каноническому адресу.
+     */
+    private String toPath(String canonicalUrl, String baseUrl) {
+        return UrlCanonicalizer.pathOf(canonicalUrl, UrlCanonicalizer.canonicalizeBase(baseUrl));
+    }
+
+    /**
+     * Канонический адрес страницы по сохранённому пути; пути, сохранённые
+     * до приведения адресов к каноническому виду, приводятся к нему здесь.
+     */
+    private String toUrl(String path, String baseUrl) {
+        String relative = path.startsWith("/") || path.startsWith("?") ? path : "/" + path;
+        return UrlCanonicalizer.canonicalize(UrlCanonicalizer.canonicalizeBase(baseUrl) + relative);
+    }
 
-        private boolean isValidUrl(String url) {
-            return url.startsWith(baseUrl)
-                    && !url.contains("#")
-                    && !url.matches(".*\\.(jpg|jpeg|png|gif|webp|svg|ico|bmp|tiff|pdf|zip|rar|7z|tar|gz|doc|docx|xls|xlsx|ppt|pptx|mp3|mp4|avi|mov|wmv|flv|css|js)$");
+    private Site findSiteByUrl(String url) {
+        for (Site site : sitesList.getSites()) {
+            if (url.startsWith(site.getUrl())) {
+                return site;
+            }
         }
+        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+package searchengine.services.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Позиции слов текста страницы, сгруппированные по леммам: для каждой леммы —
+ * границы [start, end) всех её словоформ в page.plain_text. По ним сниппет
+ * выбирается и подсвечивается без повторной лемматизации.
+ *
+ * <p>Формат {@link #encode()}: число лемм, затем для каждой леммы длина и UTF-8 байты
+ * леммы, длина блока позиций в байтах и сам блок — число вхождений и для каждого
+ * отступ от конца предыдущего вхождения и длина слова. Все числа — varint.
+ */
+public final class LemmaPositions {
+
+    private final Map<String, Occurrences> lemmas = new HashMap<>();
+
+    public void add(String lemma, int start, int end) {
+        lemmas.computeIfAbsent(lemma, key -> new Occurrences()).add(start, end);
+    }
+
+    public boolean isEmpty() {
+        return lemmas.isEmpty();
+    }
+
+    /**
+     * Передаёт в consumer все вхождения лемм в порядке их добавления для каждой леммы.
+     */
+    public void forEach(OccurrenceConsumer consumer) {
+        for (Map.Entry<String, Occurrences> entry : lemmas.entrySet()) {
+            Occurrences occurrences = entry.getValue();
+            for (int i = 0; i < occurrences.size; i += 2) {
+                consumer.accept(entry.getKey(), occurrences.bounds[i], occurrences.bounds[i + 1]);
+            }
+        }
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        writeVarInt(output, lemmas.size());
+        for (Map.Entry<String, Occurrences> entry : lemmas.entrySet()) {
+            byte[] lemma = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            writeVarInt(output, lemma.length);
+            output.writeBytes(lemma);
+
+            Occurrences occurrences = entry.getValue();
+            block.reset();
+            writeVarInt(block, occurrences.size / 2);
+            int previousEnd = 0;
+            for (int i = 0; i < occurrences.size; i += 2) {
+                writeVarInt(block, occurrences.bounds[i] - previousEnd);
+                writeVarInt(block, occurrences.bounds[i + 1] - occurrences.bounds[i]);
+                previousEnd = occurrences.bounds[i + 1];
+            }
+            writeVarInt(output, block.size());
+            output.writeBytes(block.toByteArray());
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Читает из data только позиции заданных лемм; блоки остальных лемм пропускаются.
+     */
+    public static LemmaPositions decode(byte[] data, Set<String> wanted) {
+        LemmaPositions positions = new LemmaPositions();
+        if (data.length == 0) {
+            return positions;
+        }
+        int[] offset = new int[1];
+        int count = readVarInt(data, offset);
+        for (int i = 0; i < count; i++) {
+            int lemmaLength = readVarInt(data, offset);
+            String lemma = new String(data, offset[0], lemmaLength, StandardCharsets.UTF_8);
+            offset[0] += lemmaLength;
+            int blockLength = readVarInt(data, offset);
+            int blockEnd = offset[0] + blockLength;
+            if (wanted.contains(lemma)) {
+                int occurrences = readVarInt(data, offset);
+                int previousEnd = 0;
+                for (int j = 0; j < occurrences; j++) {
+                    int start = previousEnd + readVarInt(data, offset);
+                    int end = start + readVarInt(data, offset);
+                    positions.add(lemma, start, end);
+                    previousEnd = end;
+                }
+            }
+            offset[0] = blockEnd;
+        }
+        return positions;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] offset) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = data[offset[0]++];
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+
+    @FunctionalInterface
+    public interface OccurrenceConsumer {
+        void accept(String lemma, int start, int end);
+    }
+
+    private static class Occurrences {
+        private int[] bounds = new int[4];
+        private int size;
+
+        private void add(int start, int end) {
+            if (size == bounds.length) {
+                bounds = Arrays.copyOf(bounds, size * 2);
+            }
+            bounds[size++] = start;
+            bounds[size++] = end;
+        }
+    }
+}
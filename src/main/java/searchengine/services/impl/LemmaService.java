@@ -1,10 +1,15 @@
 package searchengine.services.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.springframework.stereotype.Service;
+import searchengine.config.LemmaCacheSettings;
+import searchengine.dto.metrics.CacheMetrics;
 
 import java.io.IOException;
 import java.util.*;
@@ -18,7 +23,13 @@ public class LemmaService {
     private static final String[] RUSSIAN_SERVICE_PARTS = {"МЕЖД", "ПРЕДЛ", "СОЮЗ", "ЧАСТ"};
     private static final String[] ENGLISH_SERVICE_PARTS = {"PREP", "CONJ", "PART", "ARTICLE", "INT"};
 
-    public LemmaService() {
+    /**
+     * Кэш «словоформа → результат лемматизации». Общий для индексации, разбора
+     * запроса и подсветки в сниппетах: частотные словоформы анализируются один раз.
+     */
+    private final Cache<String, WordLemma> wordCache;
+
+    public LemmaService(LemmaCacheSettings cacheSettings) {
         try {
             this.russianMorphology = new RussianLuceneMorphology();
             this.englishMorphology = new EnglishLuceneMorphology();
@@ -26,49 +37,101 @@ public class LemmaService {
             log.error("Ошибка инициализации лемматизатора", e);
             throw new RuntimeException("Не удалось инициализировать лемматизатор", e);
         }
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(cacheSettings.getMaxSize())
+                .recordStats();
+        if (cacheSettings.getExpireAfterAccess() != null) {
+            builder.expireAfterAccess(cacheSettings.getExpireAfterAccess());
+        }
+        this.wordCache = builder.build();
     }
 
     public Map<String, Integer> collectLemmas(String text) {
         Map<String, Integer> lemmas = new HashMap<>();
-        String[] words = text.toLowerCase().replaceAll("[^а-яёa-z\\s]", " ").trim().split("\\s+");
-
-        for (String word : words) {
-            if (word.length() < 3) {
-                continue;
+        WordTokenizer.tokenize(text, (word, script) -> {
+            String lemma = lemmaOf(word, script);
+            if (lemma != null) {
+                lemmas.merge(lemma, 1, Integer::sum);
             }
+        });
+        return lemmas;
+    }
 
-            try {
-                LuceneMorphology morphology;
-                String[] serviceParts;
-
-                if (isRussian(word)) {
-                    morphology = russianMorphology;
-                    serviceParts = RUSSIAN_SERVICE_PARTS;
-                } else if (isEnglish(word)) {
-                    morphology = englishMorphology;
-                    serviceParts = ENGLISH_SERVICE_PARTS;
-                } else {
-                    continue;
-                }
-
-                List<String> wordBaseForms = morphology.getMorphInfo(word);
-                if (isServiceWord(wordBaseForms, serviceParts)) {
-                    continue;
-                }
-
-                List<String> normalForms = morphology.getNormalForms(word);
-                if (!normalForms.isEmpty()) {
-                    String lemma = normalForms.get(0);
-                    lemmas.put(lemma, lemmas.getOrDefault(lemma, 0) + 1);
-                }
-            } catch (Exception e) {
-                log.debug("Не удалось обработать слово: {}", word);
+    /**
+     * То же, что {@link #collectLemmas(String)}, и дополнительно записывает
+     * в positions границы каждого слова, у которого нашлась лемма.
+     */
+    public Map<String, Integer> collectLemmas(String text, LemmaPositions positions) {
+        Map<String, Integer> lemmas = new HashMap<>();
+        WordTokenizer.tokenize(text, (word, script, start, end) -> {
+            String lemma = lemmaOf(word, script);
+            if (lemma != null) {
+                lemmas.merge(lemma, 1, Integer::sum);
+                positions.add(lemma, start, end);
             }
-        }
+        });
+        return lemmas;
+    }
 
+    public Set<String> getLemmasFromQuery(String query) {
+        Set<String> lemmas = new HashSet<>();
+        WordTokenizer.tokenize(query, (word, script) -> {
+            String lemma = lemmaOf(word, script);
+            if (lemma != null) {
+                lemmas.add(lemma);
+            }
+        });
         return lemmas;
     }
 
+    public CacheMetrics getCacheMetrics() {
+        CacheStats stats = wordCache.stats();
+        CacheMetrics metrics = new CacheMetrics();
+        metrics.setSize(wordCache.estimatedSize());
+        metrics.setHitCount(stats.hitCount());
+        metrics.setMissCount(stats.missCount());
+        metrics.setHitRate(stats.hitRate());
+        metrics.setEvictionCount(stats.evictionCount());
+        return metrics;
+    }
+
+    /**
+     * Возвращает лемму словоформы в нижнем регистре или null для служебных
+     * и нераспознанных слов.
+     */
+    private String lemmaOf(String word, WordTokenizer.Script script) {
+        return wordCache.get(word, w -> resolve(w, script)).getLemma();
+    }
+
+    private WordLemma resolve(String word, WordTokenizer.Script script) {
+        try {
+            LuceneMorphology morphology;
+            String[] serviceParts;
+
+            if (script == WordTokenizer.Script.CYRILLIC) {
+                morphology = russianMorphology;
+                serviceParts = RUSSIAN_SERVICE_PARTS;
+            } else {
+                morphology = englishMorphology;
+                serviceParts = ENGLISH_SERVICE_PARTS;
+            }
+
+            List<String> wordBaseForms = morphology.getMorphInfo(word);
+            if (isServiceWord(wordBaseForms, serviceParts)) {
+                return WordLemma.SERVICE;
+            }
+
+            List<String> normalForms = morphology.getNormalForms(word);
+            if (!normalForms.isEmpty()) {
+                return new WordLemma(normalForms.get(0));
+            }
+        } catch (Exception e) {
+            log.debug("Не удалось обработать слово: {}", word);
+        }
+        return WordLemma.UNKNOWN;
+    }
+
     private boolean isServiceWord(List<String> morphInfo, String[] serviceParts) {
         if (morphInfo.isEmpty()) {
             return true;
@@ -83,51 +146,22 @@ public class LemmaService {
         return false;
     }
 
-    private boolean isRussian(String word) {
-        return word.matches(".*[а-яё].*");
-    }
-
-    private boolean isEnglish(String word) {
-        return word.matches(".*[a-z].*");
-    }
+    /**
+     * Результат лемматизации словоформы: лемма либо отметка, что слово
+     * служебное или не распознано (тогда лемма равна null).
+     */
+    private static final class WordLemma {
+        private static final WordLemma SERVICE = new WordLemma(null);
+        private static final WordLemma UNKNOWN = new WordLemma(null);
 
-    public Set<String> getLemmasFromQuery(String query) {
-        Set<String> lemmas = new HashSet<>();
-        String[] words = query.toLowerCase().replaceAll("[^а-яёa-z\\s]", " ").trim().split("\\s+");
+        private final String lemma;
 
-        for (String word : words) {
-            if (word.length() < 3) {
-                continue;
-            }
-
-            try {
-                LuceneMorphology morphology;
-                String[] serviceParts;
-
-                if (isRussian(word)) {
-                    morphology = russianMorphology;
-                    serviceParts = RUSSIAN_SERVICE_PARTS;
-                } else if (isEnglish(word)) {
-                    morphology = englishMorphology;
-                    serviceParts = ENGLISH_SERVICE_PARTS;
-                } else {
-                    continue;
-                }
-
-                List<String> wordBaseForms = morphology.getMorphInfo(word);
-                if (isServiceWord(wordBaseForms, serviceParts)) {
-                    continue;
-                }
-
-                List<String> normalForms = morphology.getNormalForms(word);
-                if (!normalForms.isEmpty()) {
-                    lemmas.add(normalForms.get(0));
-                }
-            } catch (Exception e) {
-                log.debug("Не удалось обработать слово запроса: {}", word);
-            }
+        private WordLemma(String lemma) {
+            this.lemma = lemma;
         }
 
-        return lemmas;
+        private String getLemma() {
+            return lemma;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package searchengine.services.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import searchengine.dto.metrics.MetricsResponse;
+import searchengine.dto.metrics.StageMetrics;
+import searchengine.services.MetricsService;
+import searchengine.services.crawler.CrawlerEngine;
+import searchengine.services.index.InvertedIndex;
+import searchengine.services.pipeline.IndexingPipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class MetricsServiceImpl implements MetricsService {
+
+    private final CrawlerEngine crawlerEngine;
+    private final IndexingPipeline indexingPipeline;
+    private final LemmaService lemmaService;
+    private final InvertedIndex invertedIndex;
+    private final SearchResultCache searchResultCache;
+
+    @Override
+    public MetricsResponse getMetrics() {
+        List<StageMetrics> pipeline = new ArrayList<>();
+        pipeline.add(crawlerEngine.getMetrics());
+        pipeline.addAll(indexingPipeline.getMetrics());
+
+        MetricsResponse response = new MetricsResponse();
+        response.setPipeline(pipeline);
+        response.setCrawls(crawlerEngine.getCrawlMetrics());
+        response.setLemmaCache(lemmaService.getCacheMetrics());
+        response.setInvertedIndex(invertedIndex.getMetrics());
+        response.setSearchCache(searchResultCache.getMetrics());
+        response.setResult(true);
+        return response;
+    }
+}
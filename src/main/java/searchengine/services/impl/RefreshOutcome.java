@@ -0,0 +1,47 @@
+package searchengine.services.impl;
+
+import searchengine.repository.PageBatchRepository;
+import searchengine.services.crawler.FetchedPage;
+
+import java.util.Objects;
+
+/**
+ * Что повторный обход делает с загруженной страницей в сравнении с сохранённой.
+ */
+enum RefreshOutcome {
+    /** Страницы не было: она индексируется. */
+    ADDED,
+    /** Сервер ответил 304: страница не разбирается, ссылки берутся из сохранённой версии. */
+    NOT_MODIFIED,
+    /** Код ответа и хеш содержимого совпали: обновляются только валидаторы. */
+    SAME_CONTENT,
+    /**
+     * Содержимое изменилось или его не с чем сравнить (тело обрезано):
+     * новая версия заменяет прежнюю, когда записан её индекс.
+     */
+    CHANGED,
+    /** Страница удалена с сайта (404 или 410). */
+    GONE,
+    /** Другой ответ не 2xx: сохранённая версия остаётся как есть. */
+    FAILED;
+
+    static RefreshOutcome of(PageBatchRepository.PageState known, FetchedPage page) {
+        if (known == null) {
+            return ADDED;
+        }
+        if (page.isNotModified()) {
+            return NOT_MODIFIED;
+        }
+        if (page.getStatusCode() == 404 || page.getStatusCode() == 410) {
+            return GONE;
+        }
+        if (page.getStatusCode() / 100 != 2) {
+            return FAILED;
+        }
+        if (!page.isTruncated() && known.getCode() == page.getStatusCode()
+                && Objects.equals(known.getContentHash(), page.getContentHash())) {
+            return SAME_CONTENT;
+        }
+        return CHANGED;
+    }
+}
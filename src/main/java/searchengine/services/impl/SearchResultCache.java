@@ -0,0 +1,177 @@
+package searchengine.services.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.EqualsAndHashCode;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchCacheSettings;
+import searchengine.dto.metrics.CacheMetrics;
+import searchengine.model.SiteEntity;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш ранжированных результатов поиска: для запроса хранится список id лучших страниц
+ * по убыванию релевантности (не больше max-results), из которого отдаются первые страницы выдачи.
+ * Ключ включает номера поколений индекса сайтов; любое изменение индекса сайта
+ * увеличивает его поколение, и записи со старым поколением удаляются.
+ */
+@Component
+public class SearchResultCache {
+
+    private final boolean enabled;
+    private final int maxResults;
+    private final Cache<Key, RankedPages> cache;
+    private final Map<Integer, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public SearchResultCache(SearchCacheSettings settings) {
+        this.enabled = settings.isEnabled();
+        this.maxResults = Math.max(1, settings.getMaxResults());
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaxMemory().toBytes())
+                .weigher((Key key, RankedPages pages) -> (int) Math.min(Integer.MAX_VALUE,
+                        key.memoryBytes() + pages.memoryBytes()))
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Сколько лучших страниц запроса помещается в кэш. */
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    /**
+     * Ключ запроса. Поколения сайтов читаются до выполнения поиска, поэтому результат,
+     * посчитанный во время переиндексации, сохраняется под уже устаревшим ключом.
+     */
+    public Key key(Set<String> lemmas, String siteUrl, List<SiteEntity> sites) {
+        List<String> sortedLemmas = new ArrayList<>(lemmas);
+        Collections.sort(sortedLemmas);
+        int[] siteIds = new int[sites.size()];
+        long[] siteGenerations = new long[sites.size()];
+        for (int i = 0; i < sites.size(); i++) {
+            siteIds[i] = sites.get(i).getId();
+            siteGenerations[i] = generation(siteIds[i]).get();
+        }
+        return new Key(sortedLemmas, siteUrl == null ? "" : siteUrl, siteIds, siteGenerations);
+    }
+
+    public RankedPages get(Key key) {
+        return enabled ? cache.getIfPresent(key) : null;
+    }
+
+    public void put(Key key, RankedPages pages) {
+        if (enabled) {
+            cache.put(key, pages);
+        }
+    }
+
+    /**
+     * Отмечает изменение индекса или статуса сайта.
+     */
+    public void siteChanged(int siteId) {
+        generation(siteId).incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.covers(siteId));
+    }
+
+    public CacheMetrics getMetrics() {
+        CacheStats stats = cache.stats();
+        CacheMetrics metrics = new CacheMetrics();
+        metrics.setSize(cache.estimatedSize());
+        metrics.setHitCount(stats.hitCount());
+        metrics.setMissCount(stats.missCount());
+        metrics.setHitRate(stats.hitRate());
+        metrics.setEvictionCount(stats.evictionCount());
+        metrics.setMemoryBytes(cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L));
+        return metrics;
+    }
+
+    private AtomicLong generation(int siteId) {
+        return generations.computeIfAbsent(siteId, id -> new AtomicLong());
+    }
+
+    @EqualsAndHashCode
+    public static class Key {
+        private final List<String> lemmas;
+        private final String siteUrl;
+        private final int[] siteIds;
+        private final long[] generations;
+
+        private Key(List<String> lemmas, String siteUrl, int[] siteIds, long[] generations) {
+            this.lemmas = lemmas;
+            this.siteUrl = siteUrl;
+            this.siteIds = siteIds;
+            this.generations = generations;
+        }
+
+        private boolean covers(int siteId) {
+            for (int id : siteIds) {
+                if (id == siteId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private long memoryBytes() {
+            long bytes = 96 + 2L * siteUrl.length() + 12L * siteIds.length;
+            for (String lemma : lemmas) {
+                bytes += 48 + 2L * lemma.length();
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Лучшие найденные страницы по убыванию релевантности и общее число найденных.
+     */
+    public static class RankedPages {
+        private final int[] pageIds;
+        private final float[] relevance;
+        private final int total;
+
+        public RankedPages(List<Map.Entry<Integer, Float>> ranked, int total) {
+            this.total = total;
+            pageIds = new int[ranked.size()];
+            relevance = new float[ranked.size()];
+            for (int i = 0; i < ranked.size(); i++) {
+                pageIds[i] = ranked.get(i).getKey();
+                relevance[i] = ranked.get(i).getValue();
+            }
+        }
+
+        public int size() {
+            return total;
+        }
+
+        /** Есть ли в сохранённых страницах вся запрошенная часть выдачи. */
+        public boolean covers(int offset, int limit) {
+            return pageIds.length == total || (long) offset + limit <= pageIds.length;
+        }
+
+        public float maxRelevance() {
+            return relevance.length > 0 ? relevance[0] : 0f;
+        }
+
+        public List<Map.Entry<Integer, Float>> window(int offset, int limit) {
+            List<Map.Entry<Integer, Float>> window = new ArrayList<>();
+            for (int i = Math.max(offset, 0); i < pageIds.length && i - offset < limit; i++) {
+                window.add(new AbstractMap.SimpleImmutableEntry<>(pageIds[i], relevance[i]));
+            }
+            return window;
+        }
+
+        private long memoryBytes() {
+            return 64 + 8L * pageIds.length;
+        }
+    }
+}
@@ -10,13 +10,15 @@ import searchengine.dto.search.SearchData;
 import searchengine.dto.search.SearchResponse;
 import searchengine.model.IndexingStatus;
 import searchengine.model.LemmaEntity;
-import searchengine.model.PageEntity;
+import searchengine.model.PageContentEntity;
 import searchengine.model.SiteEntity;
-import searchengine.repository.IndexRepository;
+import searchengine.repository.IndexBatchRepository;
 import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageContentRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 import searchengine.services.SearchService;
+import searchengine.services.index.InvertedIndex;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -28,15 +30,21 @@ public class SearchServiceImpl implements SearchService {
 
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
     private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final IndexBatchRepository indexBatchRepository;
     private final LemmaService lemmaService;
+    private final InvertedIndex invertedIndex;
+    private final SearchResultCache searchResultCache;
 
     @Override
     public SearchResponse search(String query, String siteUrl, int offset, int limit) {
         if (query == null || query.trim().isEmpty()) {
             return new SearchResponse(false, "Задан пустой поисковый запрос");
         }
+        if (offset < 0 || limit < 0) {
+            return new SearchResponse(false, "Параметры offset и limit не могут быть отрицательными");
+        }
 
         try {
             Set<String> lemmas = lemmaService.getLemmasFromQuery(query);
@@ -49,38 +57,36 @@ public class SearchServiceImpl implements SearchService {
                 return new SearchResponse(false, "Указанный сайт не найден");
             }
 
-            Map<PageEntity, Float> pageRelevance = new HashMap<>();
-
-            for (SiteEntity site : sitesToSearch) {
-                if (site.getStatus() != IndexingStatus.INDEXED) {
-                    continue;
-                }
+            List<SiteEntity> indexedSites = sitesToSearch.stream()
+                    .filter(site -> site.getStatus() == IndexingStatus.INDEXED)
+                    .collect(Collectors.toList());
 
-                Map<PageEntity, Float> sitePageRelevance = searchOnSite(site, lemmas);
-                pageRelevance.putAll(sitePageRelevance);
+            SearchResultCache.Key key = searchResultCache.key(lemmas, siteUrl, indexedSites);
+            SearchResultCache.RankedPages ranked = searchResultCache.get(key);
+            if (ranked != null && ranked.covers(offset, limit)) {
+                return createResponse(ranked.size(), ranked.maxRelevance(), ranked.window(offset, limit), lemmas);
             }
 
-            if (pageRelevance.isEmpty()) {
-                return new SearchResponse(true, 0, Collections.emptyList());
+            Map<Integer, Float> pageRelevance;
+            if (invertedIndex.isReady()) {
+                pageRelevance = new HashMap<>();
+                for (SiteEntity site : indexedSites) {
+                    pageRelevance.putAll(invertedIndex.search(site.getId(), lemmas));
+                }
+            } else {
+                pageRelevance = searchInDatabase(indexedSites, lemmas);
             }
 
-            float maxRelevance = Collections.max(pageRelevance.values());
-
-            List<SearchData> searchResults = pageRelevance.entrySet().stream()
-                    .map(entry -> createSearchData(entry.getKey(), entry.getValue() / maxRelevance, lemmas))
-                    .sorted(Comparator.comparing(SearchData::getRelevance).reversed())
-                    .collect(Collectors.toList());
-
-            int totalResults = searchResults.size();
-            int toIndex = Math.min(offset + limit, totalResults);
-
-            if (offset >= totalResults) {
-                return new SearchResponse(true, totalResults, Collections.emptyList());
+            if (searchResultCache.isEnabled() && ranked == null) {
+                ranked = new SearchResultCache.RankedPages(
+                        selectWindow(pageRelevance, 0, searchResultCache.getMaxResults()), pageRelevance.size());
+                searchResultCache.put(key, ranked);
+                if (ranked.covers(offset, limit)) {
+                    return createResponse(ranked.size(), ranked.maxRelevance(), ranked.window(offset, limit), lemmas);
+                }
             }
 
-            List<SearchData> paginatedResults = searchResults.subList(offset, toIndex);
-
-            return new SearchResponse(true, totalResults, paginatedResults);
+            return createResponse(pageRelevance, lemmas, offset, limit);
 
         } catch (Exception e) {
             log.error("Ошибка при выполнении поиска", e);
@@ -88,86 +94,133 @@ public class SearchServiceImpl implements SearchService {
         }
     }
 
-    private List<SiteEntity> getSitesToSearch(String siteUrl) {
-        if (siteUrl == null || siteUrl.isEmpty()) {
-            return siteRepository.findAll();
+    /**
+     * Ранжирование выполняется по id страниц, из БД загружаются
+     * только страницы запрошенной части выдачи.
+     */
+    private SearchResponse createResponse(Map<Integer, Float> pageRelevance, Set<String> lemmas,
+                                          int offset, int limit) {
+        if (pageRelevance.isEmpty()) {
+            return new SearchResponse(true, 0, Collections.emptyList());
         }
-
-        return siteRepository.findByUrl(siteUrl)
-                .map(Collections::singletonList)
-                .orElse(Collections.emptyList());
+        return createResponse(pageRelevance.size(), Collections.max(pageRelevance.values()),
+                selectWindow(pageRelevance, offset, limit), lemmas);
     }
 
-    private Map<PageEntity, Float> searchOnSite(SiteEntity site, Set<String> queryLemmas) {
-        Map<PageEntity, Float> pageRelevance = new HashMap<>();
-
-        long totalPages = pageRepository.countBySite(site);
-        if (totalPages == 0) {
-            return pageRelevance;
+    private SearchResponse createResponse(int totalResults, float maxRelevance,
+                                          List<Map.Entry<Integer, Float>> window, Set<String> lemmas) {
+        if (window.isEmpty()) {
+            return new SearchResponse(true, totalResults, Collections.emptyList());
         }
 
-        List<LemmaEntity> sortedLemmas = queryLemmas.stream()
-                .map(lemma -> lemmaRepository.findBySiteAndLemma(site, lemma).orElse(null))
-                .filter(Objects::nonNull)
-                .filter(lemma -> lemma.getFrequency() < totalPages * 0.8)
-                .sorted(Comparator.comparing(LemmaEntity::getFrequency))
-                .collect(Collectors.toList());
+        Map<Integer, PageRepository.PageSummary> pages = pageRepository.findSummariesByIdIn(
+                        window.stream().map(Map.Entry::getKey).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(PageRepository.PageSummary::getId, page -> page));
 
-        if (sortedLemmas.isEmpty()) {
-            return pageRelevance;
+        List<SearchData> results = new ArrayList<>();
+        for (Map.Entry<Integer, Float> entry : window) {
+            PageRepository.PageSummary page = pages.get(entry.getKey());
+            if (page != null) {
+                results.add(createSearchData(page, entry.getValue() / maxRelevance, lemmas));
+            }
         }
 
-        Set<PageEntity> pages = findPagesWithAllLemmas(sortedLemmas);
+        return new SearchResponse(true, totalResults, results);
+    }
 
-        for (PageEntity page : pages) {
-            float relevance = calculatePageRelevance(page, sortedLemmas);
-            pageRelevance.put(page, relevance);
+    /**
+     * Возвращает страницы с позиции offset по offset + limit в порядке убывания
+     * релевантности (при равенстве — по возрастанию id). Лучшие offset + limit
+     * страниц отбираются кучей ограниченного размера, без сортировки всех результатов.
+     * Смещение и число страниц неотрицательны.
+     */
+    static List<Map.Entry<Integer, Float>> selectWindow(Map<Integer, Float> pageRelevance, int offset, int limit) {
+        if (limit == 0 || offset >= pageRelevance.size()) {
+            return Collections.emptyList();
+        }
+        // offset меньше числа результатов, поэтому сумма не переполняет int
+        int size = offset + Math.min(limit, pageRelevance.size() - offset);
+
+        Comparator<Map.Entry<Integer, Float>> ranking = Map.Entry.<Integer, Float>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<Integer, Float>> top = new PriorityQueue<>(Math.min(size, pageRelevance.size()),
+                ranking.reversed());
+        for (Map.Entry<Integer, Float> entry : pageRelevance.entrySet()) {
+            if (top.size() < size) {
+                top.add(entry);
+            } else if (ranking.compare(entry, top.peek()) < 0) {
+                top.poll();
+                top.add(entry);
+            }
         }
 
-        return pageRelevance;
+        List<Map.Entry<Integer, Float>> ranked = new ArrayList<>(top);
+        ranked.sort(ranking);
+        return ranked.subList(Math.min(offset, ranked.size()), ranked.size());
     }
 
-    private Set<PageEntity> findPagesWithAllLemmas(List<LemmaEntity> lemmas) {
-        if (lemmas.isEmpty()) {
-            return Collections.emptySet();
+    private List<SiteEntity> getSitesToSearch(String siteUrl) {
+        if (siteUrl == null || siteUrl.isEmpty()) {
+            return siteRepository.findAll();
         }
 
-        LemmaEntity firstLemma = lemmas.get(0);
-        Set<PageEntity> pages = new HashSet<>(indexRepository.findPagesByLemma(firstLemma));
+        return siteRepository.findAllByUrl(siteUrl);
+    }
 
-        for (int i = 1; i < lemmas.size(); i++) {
-            if (pages.isEmpty()) {
-                break;
-            }
+    /**
+     * Выбирает для каждого сайта леммы запроса, встречающиеся менее чем на 80% его страниц,
+     * и находит страницы со всеми такими леммами одним запросом по всем сайтам.
+     */
+    private Map<Integer, Float> searchInDatabase(List<SiteEntity> sites, Set<String> queryLemmas) {
+        if (sites.isEmpty()) {
+            return Collections.emptyMap();
+        }
 
-            LemmaEntity lemma = lemmas.get(i);
-            List<PageEntity> filteredPages = indexRepository.findPagesByLemmaAndPageIn(lemma, pages);
-            pages.retainAll(filteredPages);
+        Map<Integer, Long> pageCounts = new HashMap<>();
+        for (SiteEntity site : sites) {
+            pageCounts.put(site.getId(), pageRepository.countBySite(site));
         }
 
-        return pages;
-    }
+        Map<Integer, Set<Integer>> lemmaIdsBySite = new HashMap<>();
+        for (LemmaEntity lemma : lemmaRepository.findBySiteInAndLemmaIn(sites, queryLemmas)) {
+            int siteId = lemma.getSite().getId();
+            if (lemma.getFrequency() < pageCounts.get(siteId) * 0.8) {
+                lemmaIdsBySite.computeIfAbsent(siteId, id -> new HashSet<>()).add(lemma.getId());
+            }
+        }
 
-    private float calculatePageRelevance(PageEntity page, List<LemmaEntity> lemmas) {
-        Double sum = indexRepository.sumRankByPageAndLemmas(page, lemmas);
-        return sum != null ? sum.floatValue() : 0f;
+        return indexBatchRepository.sumRanksOfPagesWithAllLemmas(lemmaIdsBySite);
     }
 
-    private SearchData createSearchData(PageEntity page, float relevance, Set<String> lemmas) {
+    private SearchData createSearchData(PageRepository.PageSummary page, float relevance, Set<String> lemmas) {
         SearchData data = new SearchData();
 
-        SiteEntity site = page.getSite();
-        data.setSite(site.getUrl());
-        data.setSiteName(site.getName());
+        data.setSite(page.getSiteUrl());
+        data.setSiteName(page.getSiteName());
         data.setUri(page.getPath());
         data.setRelevance(relevance);
 
         try {
-            Document doc = Jsoup.parse(page.getContent());
-            String title = doc.title();
-            data.setTitle(title.isEmpty() ? "Без названия" : title);
+            String title = page.getTitle();
+            String text = page.getPlainText();
+            LemmaPositions positions;
+            if (text != null && page.getPositions() != null) {
+                positions = LemmaPositions.decode(page.getPositions(), lemmas);
+            } else {
+                if (text == null) {
+                    Document doc = Jsoup.parse(pageContentRepository.findById(page.getId())
+                            .map(PageContentEntity::getContent)
+                            .orElse(""));
+                    title = doc.title();
+                    text = doc.text();
+                }
+                positions = new LemmaPositions();
+                lemmaService.collectLemmas(text, positions);
+            }
+            data.setTitle(title == null || title.isEmpty() ? "Без названия" : title);
 
-            String snippet = generateSnippet(doc.text(), lemmas);
+            String snippet = generateSnippet(text, positions, lemmas);
             data.setSnippet(snippet);
         } catch (Exception e) {
             log.error("Ошибка при создании данных для поиска", e);
@@ -178,27 +231,43 @@ public class SearchServiceImpl implements SearchService {
         return data;
     }
 
-    private String generateSnippet(String text, Set<String> queryLemmas) {
+    /**
+     * Выбирает до трёх предложений с наибольшим числом разных лемм запроса
+     * и выделяет в них словоформы лемм. Слова находятся по сохранённым
+     * при индексации позициям, поэтому лемматизация здесь не нужна.
+     */
+    private String generateSnippet(String text, LemmaPositions positions, Set<String> queryLemmas) {
         if (text == null || text.isEmpty()) {
             return "";
         }
 
-        String[] sentences = text.split("\\. ");
-        List<SentenceScore> sentenceScores = new ArrayList<>();
-
-        for (String sentence : sentences) {
-            if (sentence.length() < 20) {
-                continue;
+        Map<String, Integer> lemmaNumbers = new HashMap<>();
+        List<int[]> hits = new ArrayList<>();
+        positions.forEach((lemma, start, end) -> {
+            if (queryLemmas.contains(lemma) && end <= text.length()) {
+                hits.add(new int[]{start, end, lemmaNumbers.computeIfAbsent(lemma, key -> lemmaNumbers.size())});
             }
+        });
+        hits.sort(Comparator.comparingInt(hit -> hit[0]));
 
-            Map<String, Integer> sentenceLemmas = lemmaService.collectLemmas(sentence);
-            long matchCount = sentenceLemmas.keySet().stream()
-                    .filter(queryLemmas::contains)
-                    .count();
+        List<SentenceScore> sentenceScores = new ArrayList<>();
+        int hit = 0;
+        for (int start = 0; start < text.length(); ) {
+            int end = text.indexOf(". ", start);
+            if (end < 0) {
+                end = text.length();
+            }
 
-            if (matchCount > 0) {
-                sentenceScores.add(new SentenceScore(sentence, matchCount));
+            int firstHit = hit;
+            BitSet matched = new BitSet();
+            while (hit < hits.size() && hits.get(hit)[0] < end) {
+                matched.set(hits.get(hit)[2]);
+                hit++;
             }
+            if (end - start >= 20 && !matched.isEmpty()) {
+                sentenceScores.add(new SentenceScore(start, end, firstHit, hit, matched.cardinality()));
+            }
+            start = end + 2;
         }
 
         if (sentenceScores.isEmpty()) {
@@ -215,47 +284,34 @@ public class SearchServiceImpl implements SearchService {
                 break;
             }
 
-            String highlightedSentence = highlightLemmasInText(ss.getSentence(), queryLemmas);
-            snippet.append(highlightedSentence).append(". ");
+            int position = ss.getStart();
+            for (int i = ss.getFirstHit(); i < ss.getLastHit(); i++) {
+                int[] word = hits.get(i);
+                snippet.append(text, position, word[0])
+                        .append("<b>").append(text, word[0], word[1]).append("</b>");
+                position = word[1];
+            }
+            snippet.append(text, position, ss.getEnd()).append(". ");
             addedSentences++;
         }
 
         return snippet.toString().trim();
     }
 
-    private String highlightLemmasInText(String text, Set<String> queryLemmas) {
-        String[] words = text.split("\\s+");
-        StringBuilder result = new StringBuilder();
-
-        for (String word : words) {
-            String cleanWord = word.replaceAll("[^а-яёa-zА-ЯЁA-Z]", "").toLowerCase();
-
-            if (!cleanWord.isEmpty()) {
-                Set<String> wordLemmas = lemmaService.getLemmasFromQuery(cleanWord);
-                boolean matches = wordLemmas.stream().anyMatch(queryLemmas::contains);
-
-                if (matches) {
-                    result.append("<b>").append(word).append("</b> ");
-                } else {
-                    result.append(word).append(" ");
-                }
-            } else {
-                result.append(word).append(" ");
-            }
-        }
-
-        return result.toString().trim();
-    }
-
     @Getter
     private static class SentenceScore {
-        private final String sentence;
+        private final int start;
+        private final int end;
+        private final int firstHit;
+        private final int lastHit;
         private final long score;
 
-        public SentenceScore(String sentence, long score) {
-            this.sentence = sentence;
+        public SentenceScore(int start, int end, int firstHit, int lastHit, long score) {
+            this.start = start;
+            this.end = end;
+            this.firstHit = firstHit;
+            this.lastHit = lastHit;
             this.score = score;
         }
-
     }
-}
\ No newline at end of file
+}
@@ -15,7 +15,9 @@ import searchengine.services.StatisticsService;
 
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -30,7 +32,7 @@ public class StatisticsServiceImpl implements StatisticsService {
         TotalStatistics total = new TotalStatistics();
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
 
-        List<SiteEntity> sites = siteRepository.findAll();
+        List<SiteEntity> sites = currentGenerations(siteRepository.findAll());
         total.setSites(sites.size());
 
         boolean isIndexing = sites.stream()
@@ -82,4 +84,19 @@ public class StatisticsServiceImpl implements StatisticsService {
 
         return response;
     }
+
+    /**
+     * Оставляет по одной записи на сайт: самое новое поколение, кроме
+     * заменённых. Во время переиндексации это строящееся поколение.
+     */
+    private List<SiteEntity> currentGenerations(List<SiteEntity> sites) {
+        Map<String, SiteEntity> current = new LinkedHashMap<>();
+        for (SiteEntity site : sites) {
+            if (site.getStatus() == IndexingStatus.RETIRED) {
+                continue;
+            }
+            current.merge(site.getUrl(), site, (first, second) -> first.getId() > second.getId() ? first : second);
+        }
+        return new ArrayList<>(current.values());
+    }
 }
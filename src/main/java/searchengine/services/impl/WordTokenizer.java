@@ -0,0 +1,98 @@
+package searchengine.services.impl;
+
+/**
+ * Однопроходный разбор текста на слова для лемматизации. Даёт те же слова, что
+ * {@code text.toLowerCase().replaceAll("[^а-яёa-z\\s]", " ").trim().split("\\s+")},
+ * но без копий всего текста и регулярных выражений: регистр приводится
+ * и алфавит слова определяется прямо при сканировании символов.
+ */
+final class WordTokenizer {
+
+    /** Слова короче этой длины не лемматизируются. */
+    static final int MIN_WORD_LENGTH = 3;
+
+    enum Script {
+        CYRILLIC,
+        LATIN
+    }
+
+    @FunctionalInterface
+    interface TokenConsumer {
+        void accept(String word, Script script);
+    }
+
+    /**
+     * Получает слово вместе с его границами [start, end) в исходном тексте.
+     */
+    @FunctionalInterface
+    interface PositionalTokenConsumer {
+        void accept(String word, Script script, int start, int end);
+    }
+
+    private WordTokenizer() {
+    }
+
+    /**
+     * Передаёт в consumer слова текста длиной не меньше {@link #MIN_WORD_LENGTH}
+     * в нижнем регистре. Слово с кириллическими буквами считается русским,
+     * остальные слова состоят только из латиницы.
+     */
+    static void tokenize(CharSequence text, TokenConsumer consumer) {
+        tokenize(text, (word, script, start, end) -> consumer.accept(word, script));
+    }
+
+    /**
+     * То же, что {@link #tokenize(CharSequence, TokenConsumer)}, но сообщает и позиции слов:
+     * регистр меняется посимвольно, поэтому границы слова совпадают с границами в text.
+     */
+    static void tokenize(CharSequence text, PositionalTokenConsumer consumer) {
+        char[] buffer = new char[32];
+        int length = 0;
+        int start = 0;
+        boolean cyrillic = false;
+
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            // String.toLowerCase превращает 'İ' в "i" и комбинируемую точку, которая разрывает слово
+            boolean dottedCapitalI = c == 'İ';
+            char lower = dottedCapitalI ? 'i' : Character.toLowerCase(c);
+
+            boolean isCyrillic = isCyrillic(lower);
+            if (isCyrillic || isLatin(lower)) {
+                if (length == 0) {
+                    start = i;
+                }
+                if (length == buffer.length) {
+                    char[] grown = new char[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, length);
+                    buffer = grown;
+                }
+                buffer[length++] = lower;
+                cyrillic |= isCyrillic;
+                if (!dottedCapitalI) {
+                    continue;
+                }
+            }
+
+            emit(buffer, length, cyrillic, start, dottedCapitalI ? i + 1 : i, consumer);
+            length = 0;
+            cyrillic = false;
+        }
+        emit(buffer, length, cyrillic, start, text.length(), consumer);
+    }
+
+    private static void emit(char[] buffer, int length, boolean cyrillic, int start, int end,
+                             PositionalTokenConsumer consumer) {
+        if (length >= MIN_WORD_LENGTH) {
+            consumer.accept(new String(buffer, 0, length), cyrillic ? Script.CYRILLIC : Script.LATIN, start, end);
+        }
+    }
+
+    private static boolean isCyrillic(char c) {
+        return (c >= 'а' && c <= 'я') || c == 'ё';
+    }
+
+    private static boolean isLatin(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+}
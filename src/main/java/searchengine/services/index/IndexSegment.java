@@ -0,0 +1,146 @@
+package searchengine.services.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Неизменяемый файл индекса одного сайта, отображённый в память.
+ * Данные читаются из страничного кэша ОС, в куче остаются только
+ * таблицы пропуска блоков запрошенных лемм.
+ *
+ * <pre>
+ * заголовок   magic, версия, id сайта, число страниц, максимальный id страницы,
+ *             число лемм, время создания, смещения разделов
+ * словарь     на каждую лемму: смещение и длина текста, смещение и размер списка
+ * леммы       тексты лемм в UTF-8, отсортированные побайтно
+ * постинги    списки в формате {@link PostingList#writeTo}
+ * страницы    на каждую страницу: id, смещение и длина пути; затем пути в UTF-8
+ * </pre>
+ */
+class IndexSegment {
+
+    static final int MAGIC = 0x53454758;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 48;
+    static final int DICTIONARY_ENTRY_SIZE = 16;
+    static final int PAGE_ENTRY_SIZE = 12;
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int siteId;
+    private final int pageCount;
+    private final int maxPageId;
+    private final int lemmaCount;
+    private final long createdAt;
+    private final int dictionaryOffset;
+    private final int termsOffset;
+
+    private IndexSegment(Path file, ByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.siteId = buffer.getInt(8);
+        this.pageCount = buffer.getInt(12);
+        this.maxPageId = buffer.getInt(16);
+        this.lemmaCount = buffer.getInt(20);
+        this.createdAt = buffer.getLong(24);
+        this.dictionaryOffset = buffer.getInt(32);
+        this.termsOffset = buffer.getInt(36);
+    }
+
+    static IndexSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Некорректный размер сегмента " + file + ": " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Файл не является сегментом индекса: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Неподдерживаемая версия сегмента " + file + ": " + buffer.getInt(4));
+            }
+            return new IndexSegment(file, buffer);
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    int getSiteId() {
+        return siteId;
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    int getMaxPageId() {
+        return maxPageId;
+    }
+
+    int getLemmaCount() {
+        return lemmaCount;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    long sizeBytes() {
+        return buffer.capacity();
+    }
+
+    List<String> lemmas() {
+        List<String> lemmas = new ArrayList<>(lemmaCount);
+        for (int i = 0; i < lemmaCount; i++) {
+            int entry = dictionaryOffset + i * DICTIONARY_ENTRY_SIZE;
+            byte[] term = new byte[buffer.getInt(entry + 4)];
+            buffer.get(termsOffset + buffer.getInt(entry), term);
+            lemmas.add(new String(term, StandardCharsets.UTF_8));
+        }
+        return lemmas;
+    }
+
+    /**
+     * Список страниц леммы или null, если леммы нет на сайте.
+     */
+    PostingList.Snapshot postings(String lemma) {
+        byte[] term = lemma.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = lemmaCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = dictionaryOffset + middle * DICTIONARY_ENTRY_SIZE;
+            int compare = compareTerm(buffer.getInt(entry), buffer.getInt(entry + 4), term);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return PostingList.read(buffer, buffer.getInt(entry + 8));
+            }
+        }
+        return null;
+    }
+
+    private int compareTerm(int offset, int length, byte[] term) {
+        int start = termsOffset + offset;
+        int common = Math.min(length, term.length);
+        for (int i = 0; i < common; i++) {
+            int compare = Byte.compareUnsigned(buffer.get(start + i), term[i]);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return Integer.compare(length, term.length);
+    }
+}
@@ -0,0 +1,261 @@
+package searchengine.services.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SitesList;
+import searchengine.repository.IndexBatchRepository;
+import searchengine.repository.IndexBatchRepository.IndexRow;
+import searchengine.repository.PageBatchRepository;
+import searchengine.services.impl.SearchResultCache;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Накапливает леммы проиндексированных страниц и сбрасывает их в БД пачками:
+ * один многострочный upsert лемм и пакетная вставка строк индекса на несколько
+ * страниц сразу. Сброс происходит при достижении порога {@code flush-rows}
+ * или явно через {@link #flush(int)}. После каждого сброса кэш результатов
+ * поиска по сайту сбрасывается: при повторном обходе действующего поколения
+ * новые страницы становятся видны поиску сразу. Строящееся поколение, отмеченное
+ * {@link #startGeneration(int)}, поиску не видно, и его сбросы кэш не трогают.
+ * <p>
+ * Новая версия уже проиндексированной страницы ({@link #replace}) сохраняется
+ * под временным путём, а прежняя удаляется в транзакции записи индекса новой:
+ * поиск видит одну из двух версий, но не пропуск между ними.
+ * <p>
+ * Если пачку не удалось записать и после повторов, её страницы удаляются:
+ * иначе они остались бы в БД без строк индекса, и ни продолжение обхода,
+ * ни повторный обход не загрузили бы их заново.
+ */
+@Component
+@Slf4j
+public class IndexWriter {
+
+    private static final int RETRIES = 3;
+
+    private final IndexBatchRepository indexBatchRepository;
+    private final PageBatchRepository pageBatchRepository;
+    private final LemmaDictionary lemmaDictionary;
+    private final InvertedIndex invertedIndex;
+    private final SearchResultCache searchResultCache;
+    private final TransactionTemplate transactionTemplate;
+    private final int flushRows;
+    private final Map<Integer, SiteBuffer> buffers = new ConcurrentHashMap<>();
+    private final Set<Integer> buildingGenerations = ConcurrentHashMap.newKeySet();
+
+    public IndexWriter(IndexBatchRepository indexBatchRepository,
+                       PageBatchRepository pageBatchRepository,
+                       LemmaDictionary lemmaDictionary,
+                       InvertedIndex invertedIndex,
+                       SearchResultCache searchResultCache,
+                       TransactionTemplate transactionTemplate,
+                       SitesList sitesList) {
+        this.indexBatchRepository = indexBatchRepository;
+        this.pageBatchRepository = pageBatchRepository;
+        this.lemmaDictionary = lemmaDictionary;
+        this.invertedIndex = invertedIndex;
+        this.searchResultCache = searchResultCache;
+        this.transactionTemplate = transactionTemplate;
+        this.flushRows = sitesList.getFlushRows();
+    }
+
+    /**
+     * Отмечает поколение сайта, которое строится и ещё не видно поиску.
+     */
+    public void startGeneration(int siteId) {
+        buildingGenerations.add(siteId);
+    }
+
+    public void finishGeneration(int siteId) {
+        buildingGenerations.remove(siteId);
+    }
+
+    public void write(int siteId, int pageId, Map<String, Integer> lemmas) {
+        add(siteId, new PendingPage(pageId, lemmas, null, null));
+    }
+
+    /**
+     * Как {@link #write}, но вместе с индексом страницы удаляет её прежнюю
+     * версию и переносит страницу на её путь.
+     */
+    public void replace(int siteId, int pageId, Map<String, Integer> lemmas, int replacedPageId, String path) {
+        add(siteId, new PendingPage(pageId, lemmas, replacedPageId, path));
+    }
+
+    private void add(int siteId, PendingPage page) {
+        SiteBuffer buffer = buffers.computeIfAbsent(siteId, id -> new SiteBuffer());
+        List<PendingPage> batch = null;
+
+        synchronized (buffer) {
+            buffer.pages.add(page);
+            buffer.rows += page.lemmas.size();
+            if (buffer.rows >= flushRows) {
+                batch = buffer.drain();
+            }
+        }
+
+        if (batch != null) {
+            flush(siteId, buffer, batch);
+        }
+    }
+
+    public void flush(int siteId) {
+        SiteBuffer buffer = buffers.get(siteId);
+        if (buffer == null) {
+            return;
+        }
+
+        List<PendingPage> batch;
+        synchronized (buffer) {
+            batch = buffer.drain();
+        }
+        flush(siteId, buffer, batch);
+    }
+
+    public void discard(int siteId) {
+        buffers.remove(siteId);
+        buildingGenerations.remove(siteId);
+    }
+
+    private void flush(int siteId, SiteBuffer buffer, List<PendingPage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (PendingPage page : batch) {
+            for (String lemma : page.lemmas.keySet()) {
+                frequencies.merge(lemma, 1, Integer::sum);
+            }
+        }
+
+        synchronized (buffer.flushLock) {
+            for (int attempt = 1; attempt <= RETRIES; attempt++) {
+                try {
+                    Map<String, Integer> lemmaIds = transactionTemplate.execute(
+                            status -> writeBatch(siteId, batch, frequencies));
+                    lemmaDictionary.putAll(siteId, lemmaIds);
+                    for (PendingPage page : batch) {
+                        invertedIndex.addPage(siteId, page.pageId, page.lemmas, lemmaIds);
+                        if (page.replacedPageId != null) {
+                            invertedIndex.removePage(siteId, page.replacedPageId);
+                        }
+                    }
+                    if (!buildingGenerations.contains(siteId)) {
+                        searchResultCache.siteChanged(siteId);
+                    }
+                    log.debug("Сброшено в индекс: сайт {}, страниц {}, лемм {}", siteId, batch.size(), frequencies.size());
+                    return;
+                } catch (DataAccessException e) {
+                    boolean isDeadlock = e.getMessage() != null && e.getMessage().contains("Deadlock found");
+                    if (!isDeadlock || attempt == RETRIES) {
+                        abandon(siteId, batch, e);
+                        throw e;
+                    }
+                    log.warn("Deadlock при записи индекса (попытка {}/{}), сайт {}", attempt, RETRIES, siteId);
+                    sleepBeforeRetry();
+                }
+            }
+        }
+    }
+
+    /**
+     * Удаляет страницы незаписанной пачки, чтобы следующий обход загрузил их заново.
+     * Если не удалось и это, страницы найдёт продолжение обхода как страницы без индекса.
+     */
+    private void abandon(int siteId, List<PendingPage> batch, DataAccessException cause) {
+        List<Integer> pageIds = new ArrayList<>(batch.size());
+        for (PendingPage page : batch) {
+            pageIds.add(page.pageId);
+        }
+        log.error("Не удалось записать индекс {} страниц сайта {}, страницы удаляются: {} ({})",
+                batch.size(), siteId, pageIds, cause.getMessage());
+        try {
+            pageBatchRepository.deletePages(pageIds);
+            for (Integer pageId : pageIds) {
+                invertedIndex.removePage(siteId, pageId);
+            }
+        } catch (DataAccessException e) {
+            log.error("Не удалось удалить страницы сайта {} без индекса {}: {}", siteId, pageIds, e.getMessage());
+        }
+    }
+
+    /**
+     * Записывает пачку страниц и возвращает id всех её лемм.
+     */
+    private Map<String, Integer> writeBatch(int siteId, List<PendingPage> batch, Map<String, Integer> frequencies) {
+        indexBatchRepository.upsertLemmas(siteId, frequencies);
+
+        Map<String, Integer> lemmaIds = lemmaDictionary.lookup(siteId, frequencies.keySet());
+        if (lemmaIds.size() < frequencies.size()) {
+            List<String> unknown = new ArrayList<>();
+            for (String lemma : frequencies.keySet()) {
+                if (!lemmaIds.containsKey(lemma)) {
+                    unknown.add(lemma);
+                }
+            }
+            lemmaIds.putAll(indexBatchRepository.findLemmaIds(siteId, unknown));
+        }
+
+        List<IndexRow> rows = new ArrayList<>();
+        for (PendingPage page : batch) {
+            for (Map.Entry<String, Integer> entry : page.lemmas.entrySet()) {
+                Integer lemmaId = lemmaIds.get(entry.getKey());
+                if (lemmaId != null) {
+                    rows.add(new IndexRow(page.pageId, lemmaId, entry.getValue().floatValue()));
+                }
+            }
+        }
+        indexBatchRepository.insertIndexes(rows);
+
+        List<PageBatchRepository.Replacement> replacements = new ArrayList<>();
+        for (PendingPage page : batch) {
+            if (page.replacedPageId != null) {
+                replacements.add(new PageBatchRepository.Replacement(page.pageId, page.replacedPageId, page.path));
+            }
+        }
+        if (!replacements.isEmpty()) {
+            pageBatchRepository.replacePages(replacements);
+        }
+        return lemmaIds;
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(50 + new Random().nextInt(100));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class SiteBuffer {
+        private final Object flushLock = new Object();
+        private List<PendingPage> pages = new ArrayList<>();
+        private int rows;
+
+        private List<PendingPage> drain() {
+            List<PendingPage> drained = pages;
+            pages = new ArrayList<>();
+            rows = 0;
+            return drained;
+        }
+    }
+
+    private static class PendingPage {
+        private final int pageId;
+        private final Map<String, Integer> lemmas;
+        /** Прежняя версия страницы и её путь; null, если страница новая. */
+        private final Integer replacedPageId;
+        private final String path;
+
+        private PendingPage(int pageId, Map<String, Integer> lemmas, Integer replacedPageId, String path) {
+            this.pageId = pageId;
+            this.lemmas = lemmas;
+            this.replacedPageId = replacedPageId;
+            this.path = path;
+        }
+    }
+}
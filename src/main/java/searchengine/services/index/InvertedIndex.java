@@ -0,0 +1,430 @@
+package searchengine.services.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.dto.metrics.IndexMetrics;
+import searchengine.repository.IndexBatchRepository;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Поисковый индекс в памяти: для каждой леммы сайта хранится сжатый {@link PostingList}
+ * с id страниц и рангами. После индексации сайт записывается в файл-сегмент
+ * ({@link IndexSegment}), который при следующем запуске отображается в память
+ * вместо загрузки из таблиц lemma и search_index. Страницы, проиндексированные
+ * после записи сегмента, хранятся в куче поверх него. Пока загрузка
+ * не завершена, {@link #isReady()} возвращает false и поиск идёт через БД.
+ */
+@Component
+@Slf4j
+public class InvertedIndex {
+
+    private final IndexBatchRepository indexBatchRepository;
+    private final SegmentStore segmentStore;
+    private final boolean enabled;
+
+    private final Map<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+    private final Map<Integer, PostingList> byLemmaId = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public InvertedIndex(IndexBatchRepository indexBatchRepository, SegmentStore segmentStore,
+                         SearchSettings searchSettings) {
+        this.indexBatchRepository = indexBatchRepository;
+        this.segmentStore = segmentStore;
+        this.enabled = searchSettings.isInMemoryIndex();
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAsync() {
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(this::load, "inverted-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Добавляет страницу в индекс. Вызывается после фиксации транзакции,
+     * записавшей её строки в search_index.
+     */
+    public void addPage(int siteId, int pageId, Map<String, Integer> lemmas, Map<String, Integer> lemmaIds) {
+        if (!enabled) {
+            return;
+        }
+        update(siteId, site -> {
+            for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
+                Integer lemmaId = lemmaIds.get(entry.getKey());
+                if (lemmaId != null) {
+                    site.postings(entry.getKey(), lemmaId).add(pageId, entry.getValue());
+                }
+            }
+        });
+    }
+
+    public void pageSaved(int siteId) {
+        if (enabled) {
+            update(siteId, site -> site.pageCount.incrementAndGet());
+        }
+    }
+
+    /**
+     * Исключает страницу из выдачи. Постинги страницы не удаляются,
+     * а отфильтровываются при поиске и не попадают в следующий сегмент.
+     */
+    public void removePage(int siteId, int pageId) {
+        if (enabled) {
+            update(siteId, site -> {
+                site.deletedPages.add(pageId);
+                site.pageCount.decrementAndGet();
+            });
+        }
+    }
+
+    public void dropSite(int siteId) {
+        SiteIndex site = sites.remove(siteId);
+        if (site != null) {
+            synchronized (site) {
+                site.retired = true;
+                for (PostingList postings : site.lemmas.values()) {
+                    byLemmaId.remove(postings.getLemmaId());
+                }
+            }
+        }
+        segmentStore.deleteSite(siteId);
+    }
+
+    /**
+     * Записывает сегмент сайта и переключает поиск на него: постинги из кучи
+     * и удалённые страницы переносятся в файл, после чего освобождаются.
+     */
+    public void persistSite(int siteId) {
+        if (!isReady() || !segmentStore.isEnabled()) {
+            return;
+        }
+        SiteIndex site = sites.get(siteId);
+        if (site == null) {
+            return;
+        }
+        synchronized (site) {
+            if (site.retired) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            try {
+                SegmentWriter writer = new SegmentWriter(siteId);
+                for (String lemma : site.lemmaNames()) {
+                    writer.addTerm(lemma, site.compact(lemma));
+                }
+                indexBatchRepository.streamPages(siteId, (pageId, path) -> {
+                    if (!site.deletedPages.contains(pageId)) {
+                        writer.addPage(pageId, path);
+                    }
+                });
+
+                IndexSegment segment = segmentStore.write(writer);
+                SiteIndex replacement = new SiteIndex(segment);
+                if (!sites.replace(siteId, site, replacement)) {
+                    segmentStore.delete(segment);
+                    return;
+                }
+                site.retired = true;
+                for (PostingList postings : site.lemmas.values()) {
+                    byLemmaId.remove(postings.getLemmaId());
+                }
+                if (site.segment != null) {
+                    segmentStore.delete(site.segment);
+                }
+                log.info("Сегмент индекса сайта {} записан за {} мс: страниц {}, лемм {}, {} KB",
+                        siteId, System.currentTimeMillis() - start, segment.getPageCount(),
+                        segment.getLemmaCount(), segment.sizeBytes() / 1024);
+            } catch (IOException | RuntimeException e) {
+                log.error("Не удалось записать сегмент индекса сайта {}", siteId, e);
+            }
+        }
+    }
+
+    /**
+     * Находит страницы сайта, содержащие все леммы запроса, и считает их
+     * абсолютную релевантность как сумму рангов. Леммы, которых нет на сайте
+     * или которые встречаются более чем на 80% страниц, не учитываются;
+     * удалённые страницы не входят ни в число страниц леммы, ни в общее.
+     */
+    public Map<Integer, Float> search(int siteId, Set<String> queryLemmas) {
+        SiteIndex site = sites.get(siteId);
+        if (site == null || site.pageCount.get() <= 0) {
+            return Collections.emptyMap();
+        }
+
+        long totalPages = site.pageCount.get();
+        int[] deleted = site.deletedPages.stream().mapToInt(Integer::intValue).sorted().toArray();
+        List<PostingList.Snapshot> postings = new ArrayList<>();
+        for (String lemma : queryLemmas) {
+            PostingList.Snapshot snapshot = site.snapshot(lemma);
+            if (snapshot != null && liveSize(snapshot, deleted) < totalPages * 0.8) {
+                postings.add(snapshot);
+            }
+        }
+        if (postings.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        postings.sort(Comparator.comparingInt(PostingList.Snapshot::size));
+
+        PostingList.Cursor lead = postings.get(0).cursor();
+        PostingList.Cursor[] others = new PostingList.Cursor[postings.size() - 1];
+        for (int i = 1; i < postings.size(); i++) {
+            others[i - 1] = postings.get(i).cursor();
+        }
+
+        Map<Integer, Float> result = new HashMap<>();
+        while (lead.next()) {
+            int pageId = lead.pageId();
+            float relevance = lead.rank();
+            boolean matched = true;
+            for (PostingList.Cursor cursor : others) {
+                if (!cursor.advance(pageId)) {
+                    return filterDeleted(site, result);
+                }
+                if (cursor.pageId() != pageId) {
+                    matched = false;
+                    break;
+                }
+                relevance += cursor.rank();
+            }
+            if (matched) {
+                result.put(pageId, relevance);
+            }
+        }
+        return filterDeleted(site, result);
+    }
+
+    /**
+     * Оценка памяти, занятой постингами в куче, в байтах.
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (PostingList postings : byLemmaId.values()) {
+            bytes += postings.memoryBytes();
+        }
+        return bytes;
+    }
+
+    public IndexMetrics getMetrics() {
+        long postings = 0;
+        for (PostingList list : byLemmaId.values()) {
+            postings += list.size();
+        }
+        int segments = 0;
+        long segmentBytes = 0;
+        for (SiteIndex site : sites.values()) {
+            if (site.segment != null) {
+                segments++;
+                segmentBytes += site.segment.sizeBytes();
+            }
+        }
+        IndexMetrics metrics = new IndexMetrics();
+        metrics.setReady(isReady());
+        metrics.setLemmas(byLemmaId.size());
+        metrics.setPostings(postings);
+        metrics.setMemoryBytes(memoryBytes());
+        metrics.setSegments(segments);
+        metrics.setSegmentBytes(segmentBytes);
+        return metrics;
+    }
+
+    /**
+     * Число страниц леммы без удалённых: удалённые страницы ищутся в списке
+     * переходом по блокам, без чтения всех постингов.
+     */
+    private static int liveSize(PostingList.Snapshot snapshot, int[] deleted) {
+        int size = snapshot.size();
+        if (deleted.length == 0) {
+            return size;
+        }
+        PostingList.Cursor cursor = snapshot.cursor();
+        for (int pageId : deleted) {
+            if (!cursor.advance(pageId)) {
+                break;
+            }
+            if (cursor.pageId() == pageId) {
+                size--;
+            }
+        }
+        return size;
+    }
+
+    private Map<Integer, Float> filterDeleted(SiteIndex site, Map<Integer, Float> result) {
+        if (!site.deletedPages.isEmpty()) {
+            result.keySet().removeAll(site.deletedPages);
+        }
+        return result;
+    }
+
+    private SiteIndex site(int siteId) {
+        return sites.computeIfAbsent(siteId, id -> new SiteIndex(null));
+    }
+
+    /**
+     * Изменяет индекс сайта под его блокировкой. Если индекс успели заменить
+     * сегментом или удалить, изменение применяется к актуальному.
+     */
+    private void update(int siteId, Consumer<SiteIndex> action) {
+        while (true) {
+            SiteIndex site = site(siteId);
+            synchronized (site) {
+                if (!site.retired) {
+                    action.accept(site);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        try {
+            Map<Integer, IndexSegment> segments = segmentStore.openAll();
+            Map<Integer, int[]> pageStats = new HashMap<>();
+            indexBatchRepository.countPagesBySite((siteId, pages, maxPageId) ->
+                    pageStats.put(siteId, new int[]{pages, maxPageId}));
+
+            for (IndexSegment segment : segments.values()) {
+                int[] stats = pageStats.get(segment.getSiteId());
+                if (stats != null && stats[0] == segment.getPageCount() && stats[1] == segment.getMaxPageId()) {
+                    sites.put(segment.getSiteId(), new SiteIndex(segment));
+                } else {
+                    log.info("Сегмент {} не совпадает с БД и будет построен заново", segment.getFile());
+                    segmentStore.delete(segment);
+                }
+            }
+            for (Map.Entry<Integer, int[]> entry : pageStats.entrySet()) {
+                SiteIndex site = site(entry.getKey());
+                if (site.segment == null) {
+                    site.pageCount.addAndGet(entry.getValue()[0]);
+                }
+            }
+
+            indexBatchRepository.streamLemmas((lemmaId, siteId, lemma) -> {
+                SiteIndex site = site(siteId);
+                if (site.segment == null) {
+                    site.postings(lemma, lemmaId).unseal();
+                }
+            });
+
+            long[] rows = new long[1];
+            indexBatchRepository.streamIndex((lemmaId, pageId, rank) -> {
+                PostingList postings = byLemmaId.get(lemmaId);
+                if (postings != null) {
+                    postings.add(pageId, rank);
+                    rows[0]++;
+                }
+            });
+
+            for (PostingList postings : byLemmaId.values()) {
+                postings.seal();
+            }
+            ready = true;
+            log.info("Индекс в памяти загружен за {} мс: сайтов {}, из сегментов {}, лемм в куче {}, строк индекса {}, ~{} KB",
+                    System.currentTimeMillis() - start, sites.size(), sites.size() - countHeapSites(),
+                    byLemmaId.size(), rows[0], memoryBytes() / 1024);
+
+            for (Map.Entry<Integer, SiteIndex> entry : sites.entrySet()) {
+                if (entry.getValue().segment == null && entry.getValue().pageCount.get() > 0) {
+                    persistSite(entry.getKey());
+                }
+            }
+        } catch (Exception e) {
+            log.error("Не удалось загрузить индекс в память, поиск будет выполняться через БД", e);
+        }
+    }
+
+    private int countHeapSites() {
+        int count = 0;
+        for (SiteIndex site : sites.values()) {
+            if (site.segment == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private class SiteIndex {
+        private final IndexSegment segment;
+        private final Map<String, PostingList> lemmas = new ConcurrentHashMap<>();
+        private final Set<Integer> deletedPages = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger pageCount = new AtomicInteger();
+        private boolean retired;
+
+        private SiteIndex(IndexSegment segment) {
+            this.segment = segment;
+            if (segment != null) {
+                pageCount.set(segment.getPageCount());
+            }
+        }
+
+        private PostingList postings(String lemma, int lemmaId) {
+            return lemmas.computeIfAbsent(lemma, key -> {
+                PostingList postings = new PostingList(lemmaId);
+                byLemmaId.put(lemmaId, postings);
+                return postings;
+            });
+        }
+
+        /**
+         * Постинги леммы из сегмента и из кучи. Обычно страницы в куче добавлены
+         * после записи сегмента и имеют большие id, и списки просто сцепляются.
+         * Страница, записанная в БД до сегмента, но проиндексированная после него,
+         * нарушает этот порядок; тогда списки сливаются.
+         */
+        private PostingList.Snapshot snapshot(String lemma) {
+            PostingList.Snapshot stored = segment == null ? null : segment.postings(lemma);
+            PostingList recent = lemmas.get(lemma);
+            if (recent == null) {
+                return stored;
+            }
+            PostingList.Snapshot heap = recent.snapshot();
+            if (stored == null || heap.size() == 0) {
+                return stored == null ? heap : stored;
+            }
+            return heap.firstPageId() > stored.lastPageId()
+                    ? stored.then(heap)
+                    : PostingList.merge(stored, heap);
+        }
+
+        private Set<String> lemmaNames() {
+            Set<String> names = new HashSet<>(lemmas.keySet());
+            if (segment != null) {
+                names.addAll(segment.lemmas());
+            }
+            return names;
+        }
+
+        /**
+         * Объединяет постинги леммы из сегмента и кучи без удалённых страниц.
+         */
+        private PostingList compact(String lemma) {
+            PostingList merged = new PostingList(0);
+            PostingList.Snapshot snapshot = snapshot(lemma);
+            if (snapshot != null) {
+                PostingList.Cursor cursor = snapshot.cursor();
+                while (cursor.next()) {
+                    if (!deletedPages.contains(cursor.pageId())) {
+                        merged.add(cursor.pageId(), cursor.rank());
+                    }
+                }
+            }
+            return merged;
+        }
+    }
+}
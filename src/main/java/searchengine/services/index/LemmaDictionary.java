@@ -0,0 +1,99 @@
+package searchengine.services.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.repository.IndexBatchRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Словарь «лемма → id» для сайтов, которые сейчас индексируются. Заполняется
+ * из таблицы lemma при старте обхода и пополняется после каждой записи новых
+ * лемм, поэтому {@link IndexWriter} обращается к БД за id только для лемм,
+ * которых ещё нет в словаре.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class LemmaDictionary {
+
+    /** Примерные накладные расходы на запись: узел map, объекты String и Integer. */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final IndexBatchRepository indexBatchRepository;
+    private final Map<Integer, SiteDictionary> dictionaries = new ConcurrentHashMap<>();
+
+    public void open(int siteId) {
+        SiteDictionary dictionary = new SiteDictionary();
+        dictionary.putAll(indexBatchRepository.findAllLemmaIds(siteId));
+        dictionaries.put(siteId, dictionary);
+        log.info("Словарь лемм сайта {} загружен: {} лемм", siteId, dictionary.ids.size());
+    }
+
+    public void evict(int siteId) {
+        SiteDictionary dictionary = dictionaries.remove(siteId);
+        if (dictionary != null) {
+            log.info("Словарь лемм сайта {} освобожден: {} лемм, ~{} КБ",
+                    siteId, dictionary.ids.size(), dictionary.bytes.get() / 1024);
+        }
+    }
+
+    /**
+     * Возвращает известные словарю id для переданных лемм.
+     * Для сайта без открытого словаря возвращает пустую map.
+     */
+    public Map<String, Integer> lookup(int siteId, Collection<String> lemmas) {
+        SiteDictionary dictionary = dictionaries.get(siteId);
+        Map<String, Integer> found = new HashMap<>();
+        if (dictionary == null) {
+            return found;
+        }
+
+        for (String lemma : lemmas) {
+            Integer id = dictionary.ids.get(lemma);
+            if (id != null) {
+                found.put(lemma, id);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Добавляет id лемм, записанных в БД. Вызывать только после фиксации транзакции,
+     * иначе в словарь попадут id откаченных строк.
+     */
+    public void putAll(int siteId, Map<String, Integer> ids) {
+        SiteDictionary dictionary = dictionaries.get(siteId);
+        if (dictionary != null) {
+            dictionary.putAll(ids);
+        }
+    }
+
+    public int size(int siteId) {
+        SiteDictionary dictionary = dictionaries.get(siteId);
+        return dictionary != null ? dictionary.ids.size() : 0;
+    }
+
+    public long memoryFootprint(int siteId) {
+        SiteDictionary dictionary = dictionaries.get(siteId);
+        return dictionary != null ? dictionary.bytes.get() : 0;
+    }
+
+    private static class SiteDictionary {
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicLong bytes = new AtomicLong();
+
+        private void putAll(Map<String, Integer> entries) {
+            for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+                if (ids.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                    bytes.addAndGet(ENTRY_OVERHEAD_BYTES + 2L * entry.getKey().length());
+                }
+            }
+        }
+    }
+}
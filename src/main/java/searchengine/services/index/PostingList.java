@@ -0,0 +1,429 @@
+package searchengine.services.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static searchengine.services.index.PostingsCodec.BLOCK_SIZE;
+
+/**
+ * Список страниц, содержащих лемму, с рангом леммы на каждой странице.
+ * Полные блоки по {@link PostingsCodec#BLOCK_SIZE} записей хранятся сжатыми,
+ * последние записи — в небольшом несжатом «хвосте». Новые данные дописываются
+ * за пределы уже опубликованных, а при переполнении массивы копируются,
+ * поэтому снимок, полученный через {@link #snapshot()}, читается без блокировок.
+ */
+class PostingList {
+
+    private final int lemmaId;
+
+    private byte[] data = new byte[16];
+    private int dataLength;
+    private int[] blockLastPage = new int[1];
+    private int[] blockOffset = new int[1];
+    private int blockCount;
+
+    private int[] tailPages = new int[4];
+    private int[] tailRanks = new int[4];
+    private int tailSize;
+
+    private boolean sorted = true;
+
+    PostingList(int lemmaId) {
+        this.lemmaId = lemmaId;
+    }
+
+    int getLemmaId() {
+        return lemmaId;
+    }
+
+    synchronized int size() {
+        return blockCount * BLOCK_SIZE + tailSize;
+    }
+
+    synchronized long memoryBytes() {
+        return 64L + data.length + 4L * (blockLastPage.length + blockOffset.length)
+                + 4L * (tailPages.length + tailRanks.length);
+    }
+
+    synchronized void add(int pageId, float rank) {
+        int encodedRank = PostingsCodec.encodeRank(rank);
+        if (sorted && size() > 0 && lastPageId() >= pageId) {
+            insert(pageId, encodedRank);
+            return;
+        }
+        appendToTail(pageId, encodedRank);
+        if (sorted && tailSize == BLOCK_SIZE) {
+            flushTail();
+        }
+    }
+
+    /**
+     * Переводит список в режим массовой загрузки: строки копятся в хвосте
+     * без сохранения порядка до вызова {@link #seal()}.
+     */
+    synchronized void unseal() {
+        sorted = false;
+    }
+
+    /**
+     * Сортирует и сжимает список после массовой загрузки и убирает повторы страниц,
+     * которые могли прийти одновременно из загрузки и из индексации.
+     */
+    synchronized void seal() {
+        int size = size();
+        long[] packed = new long[size];
+        Cursor cursor = snapshot().cursor();
+        for (int i = 0; cursor.next(); i++) {
+            packed[i] = ((long) cursor.pageId() << 32) | (cursor.rank() & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+
+        rebuild(packed);
+    }
+
+    synchronized Snapshot snapshot() {
+        return new Snapshot(ByteBuffer.wrap(data), blockLastPage, blockOffset, blockCount,
+                tailPages, tailRanks, tailSize, null);
+    }
+
+    /**
+     * Сливает два снимка с пересекающимися id страниц в новый список.
+     * Если страница есть в обоих, берётся ранг из second.
+     */
+    static Snapshot merge(Snapshot first, Snapshot second) {
+        PostingList merged = new PostingList(0);
+        Cursor a = first.cursor();
+        Cursor b = second.cursor();
+        boolean hasA = a.next();
+        boolean hasB = b.next();
+        while (hasA || hasB) {
+            if (!hasB || hasA && a.pageId() < b.pageId()) {
+                merged.add(a.pageId(), a.rank());
+                hasA = a.next();
+            } else {
+                if (hasA && a.pageId() == b.pageId()) {
+                    hasA = a.next();
+                }
+                merged.add(b.pageId(), b.rank());
+                hasB = b.next();
+            }
+        }
+        return merged.snapshot();
+    }
+
+    /**
+     * Записывает список в формате, который читает {@link #read(ByteBuffer, int)}:
+     * число блоков, размер хвоста, длина сжатых данных, таблица пропуска,
+     * хвост и сами сжатые данные.
+     */
+    synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(blockCount);
+        out.writeInt(tailSize);
+        out.writeInt(dataLength);
+        for (int i = 0; i < blockCount; i++) {
+            out.writeInt(blockLastPage[i]);
+            out.writeInt(blockOffset[i]);
+        }
+        for (int i = 0; i < tailSize; i++) {
+            out.writeInt(tailPages[i]);
+            out.writeInt(tailRanks[i]);
+        }
+        out.write(data, 0, dataLength);
+    }
+
+    /**
+     * Читает список, записанный {@link #writeTo(DataOutput)}, начиная с offset.
+     * В память копируются только таблица пропуска и хвост, сжатые данные
+     * читаются прямо из буфера.
+     */
+    static Snapshot read(ByteBuffer buffer, int offset) {
+        int blocks = buffer.getInt(offset);
+        int tail = buffer.getInt(offset + 4);
+        int length = buffer.getInt(offset + 8);
+        int position = offset + 12;
+
+        int[] lastPages = new int[blocks];
+        int[] offsets = new int[blocks];
+        for (int i = 0; i < blocks; i++, position += 8) {
+            lastPages[i] = buffer.getInt(position);
+            offsets[i] = buffer.getInt(position + 4);
+        }
+        int[] pages = new int[tail];
+        int[] ranks = new int[tail];
+        for (int i = 0; i < tail; i++, position += 8) {
+            pages[i] = buffer.getInt(position);
+            ranks[i] = buffer.getInt(position + 4);
+        }
+        return new Snapshot(buffer.slice(position, length), lastPages, offsets, blocks, pages, ranks, tail, null);
+    }
+
+    private int lastPageId() {
+        return tailSize > 0 ? tailPages[tailSize - 1] : blockLastPage[blockCount - 1];
+    }
+
+    private void appendToTail(int pageId, int rank) {
+        if (tailSize == tailPages.length) {
+            int capacity = Math.max(4, tailSize * 2);
+            tailPages = Arrays.copyOf(tailPages, capacity);
+            tailRanks = Arrays.copyOf(tailRanks, capacity);
+        }
+        tailPages[tailSize] = pageId;
+        tailRanks[tailSize] = rank;
+        tailSize++;
+    }
+
+    /**
+     * Сжимает полный хвост в новый блок. Хвост заменяется новыми массивами,
+     * чтобы не менять данные, которые видят ранее выданные снимки.
+     */
+    private void flushTail() {
+        ensureData(dataLength + tailSize * 10);
+        if (blockCount == blockLastPage.length) {
+            blockLastPage = Arrays.copyOf(blockLastPage, blockCount * 2);
+            blockOffset = Arrays.copyOf(blockOffset, blockCount * 2);
+        }
+
+        int previous = blockCount > 0 ? blockLastPage[blockCount - 1] : 0;
+        int position = dataLength;
+        blockOffset[blockCount] = position;
+        for (int i = 0; i < tailSize; i++) {
+            position = PostingsCodec.writeVarInt(data, position, tailPages[i] - previous);
+            position = PostingsCodec.writeVarInt(data, position, tailRanks[i]);
+            previous = tailPages[i];
+        }
+        blockLastPage[blockCount] = previous;
+        dataLength = position;
+        blockCount++;
+
+        tailPages = new int[4];
+        tailRanks = new int[4];
+        tailSize = 0;
+    }
+
+    /**
+     * Вставка страницы в середину списка: список раскодируется и собирается заново.
+     * Случается редко, так как id новых страниц обычно больше уже проиндексированных.
+     */
+    private void insert(int pageId, int rank) {
+        int size = size();
+        long[] packed = new long[size + 1];
+        Cursor cursor = snapshot().cursor();
+        int i = 0;
+        while (cursor.next()) {
+            if (cursor.pageId() == pageId) {
+                return;
+            }
+            packed[i++] = ((long) cursor.pageId() << 32) | (cursor.rank() & 0xFFFFFFFFL);
+        }
+        packed[i] = ((long) pageId << 32) | (rank & 0xFFFFFFFFL);
+        Arrays.sort(packed);
+
+        rebuild(packed);
+    }
+
+    private void rebuild(long[] packed) {
+        data = new byte[16];
+        dataLength = 0;
+        blockLastPage = new int[1];
+        blockOffset = new int[1];
+        blockCount = 0;
+        tailPages = new int[4];
+        tailRanks = new int[4];
+        tailSize = 0;
+        sorted = true;
+
+        int previousPage = -1;
+        for (long value : packed) {
+            int pageId = (int) (value >>> 32);
+            if (pageId == previousPage) {
+                continue;
+            }
+            appendToTail(pageId, (int) value);
+            if (tailSize == BLOCK_SIZE) {
+                flushTail();
+            }
+            previousPage = pageId;
+        }
+    }
+
+    private void ensureData(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+        }
+    }
+
+    /**
+     * Неизменяемое представление списка. Снимки можно сцепить через {@link #then(Snapshot)},
+     * если все страницы второго больше страниц первого.
+     */
+    static class Snapshot {
+        private final ByteBuffer data;
+        private final int[] blockLastPage;
+        private final int[] blockOffset;
+        private final int blockCount;
+        private final int[] tailPages;
+        private final int[] tailRanks;
+        private final int tailSize;
+        private final Snapshot following;
+
+        Snapshot(ByteBuffer data, int[] blockLastPage, int[] blockOffset, int blockCount,
+                 int[] tailPages, int[] tailRanks, int tailSize, Snapshot following) {
+            this.data = data;
+            this.blockLastPage = blockLastPage;
+            this.blockOffset = blockOffset;
+            this.blockCount = blockCount;
+            this.tailPages = tailPages;
+            this.tailRanks = tailRanks;
+            this.tailSize = tailSize;
+            this.following = following;
+        }
+
+        int size() {
+            int size = blockCount * BLOCK_SIZE + tailSize;
+            return following == null ? size : size + following.size();
+        }
+
+        Snapshot then(Snapshot next) {
+            if (next == null) {
+                return this;
+            }
+            return new Snapshot(data, blockLastPage, blockOffset, blockCount, tailPages, tailRanks, tailSize,
+                    following == null ? next : following.then(next));
+        }
+
+        Cursor cursor() {
+            return new Cursor(this);
+        }
+
+        /** Id первой страницы снимка; -1, если он пуст. */
+        int firstPageId() {
+            Cursor cursor = cursor();
+            return cursor.next() ? cursor.pageId() : -1;
+        }
+
+        /** Id последней страницы без учёта сцепленных снимков; -1, если он пуст. */
+        int lastPageId() {
+            if (tailSize > 0) {
+                return tailPages[tailSize - 1];
+            }
+            return blockCount > 0 ? blockLastPage[blockCount - 1] : -1;
+        }
+    }
+
+    /**
+     * Последовательное чтение постингов по возрастанию id страницы.
+     * {@link #advance(int)} пропускает блоки по таблице последних id
+     * и раскодирует только блок, в котором может быть искомая страница.
+     */
+    static class Cursor {
+        private final int[] position = new int[1];
+        private Snapshot snapshot;
+        private int block;
+        private int inBlock;
+        private int tailIndex;
+        private int pageId;
+        private int rank;
+        private boolean exhausted;
+
+        private Cursor(Snapshot snapshot) {
+            open(snapshot);
+        }
+
+        int pageId() {
+            return pageId;
+        }
+
+        int rank() {
+            return rank;
+        }
+
+        boolean next() {
+            if (exhausted) {
+                return false;
+            }
+            if (block < snapshot.blockCount) {
+                if (inBlock == BLOCK_SIZE) {
+                    enterBlock(block + 1);
+                    if (block >= snapshot.blockCount) {
+                        return nextInTail();
+                    }
+                }
+                pageId += PostingsCodec.readVarInt(snapshot.data, position);
+                rank = PostingsCodec.readVarInt(snapshot.data, position);
+                inBlock++;
+                return true;
+            }
+            return nextInTail();
+        }
+
+        /**
+         * Переходит к первой странице с id не меньше target.
+         *
+         * @return false, если такой страницы нет
+         */
+        boolean advance(int target) {
+            if (exhausted) {
+                return false;
+            }
+            if (pageId >= target) {
+                return true;
+            }
+            while (snapshot.following != null && snapshot.lastPageId() < target) {
+                open(snapshot.following);
+            }
+            if (block < snapshot.blockCount && snapshot.blockLastPage[block] < target) {
+                int low = block + 1;
+                int high = snapshot.blockCount;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (snapshot.blockLastPage[middle] < target) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                enterBlock(low);
+            }
+            while (next()) {
+                if (pageId >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void open(Snapshot next) {
+            snapshot = next;
+            tailIndex = -1;
+            enterBlock(0);
+        }
+
+        private void enterBlock(int index) {
+            block = index;
+            inBlock = 0;
+            if (index < snapshot.blockCount) {
+                position[0] = snapshot.blockOffset[index];
+                pageId = index == 0 ? 0 : snapshot.blockLastPage[index - 1];
+            } else {
+                pageId = index == 0 ? -1 : snapshot.blockLastPage[index - 1];
+            }
+        }
+
+        private boolean nextInTail() {
+            tailIndex++;
+            if (tailIndex < snapshot.tailSize) {
+                pageId = snapshot.tailPages[tailIndex];
+                rank = snapshot.tailRanks[tailIndex];
+                return true;
+            }
+            if (snapshot.following != null) {
+                open(snapshot.following);
+                return next();
+            }
+            exhausted = true;
+            return false;
+        }
+    }
+}
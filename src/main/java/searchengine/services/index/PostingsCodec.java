@@ -0,0 +1,55 @@
+package searchengine.services.index;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Кодирование постингов блоками по {@link #BLOCK_SIZE} записей. Внутри блока
+ * каждая запись — разность id страницы с предыдущей записью и ранг, оба числа
+ * в формате varint (7 бит на байт). Для каждого блока отдельно хранятся
+ * последний id страницы и смещение в байтах — по ним курсор пропускает
+ * блоки целиком, не раскодируя их.
+ */
+final class PostingsCodec {
+
+    static final int BLOCK_SIZE = 128;
+
+    private PostingsCodec() {
+    }
+
+    /**
+     * Дописывает число в буфер и возвращает новую длину данных.
+     * Буфер должен иметь запас не меньше 5 байт.
+     */
+    static int writeVarInt(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Читает число, начиная с position[0], и сдвигает position[0] за его конец.
+     */
+    static int readVarInt(ByteBuffer buffer, int[] position) {
+        int offset = position[0];
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = buffer.get(offset++);
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        position[0] = offset;
+        return value;
+    }
+
+    /**
+     * Ранги в индексе — число вхождений леммы на странице, поэтому хранятся как целые.
+     */
+    static int encodeRank(float rank) {
+        return Math.max(0, Math.round(rank));
+    }
+}
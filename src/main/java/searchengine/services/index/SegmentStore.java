@@ -0,0 +1,115 @@
+package searchengine.services.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Каталог сегментов индекса: по одному файлу site-{id}-{время создания}.seg на сайт.
+ * Новый сегмент пишется во временный файл и переименовывается, поэтому
+ * недописанный файл никогда не будет открыт.
+ */
+@Component
+@Slf4j
+public class SegmentStore {
+
+    private static final Pattern FILE_NAME = Pattern.compile("site-(\\d+)-(\\d+)\\.seg");
+
+    private final Path directory;
+
+    public SegmentStore(SearchSettings searchSettings) {
+        String path = searchSettings.getSegmentsDir();
+        this.directory = path == null || path.isBlank() ? null : Paths.get(path);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Открывает самый новый сегмент каждого сайта. Старые и повреждённые файлы удаляются.
+     */
+    Map<Integer, IndexSegment> openAll() {
+        Map<Integer, IndexSegment> segments = new HashMap<>();
+        if (!isEnabled() || !Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "site-*")) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (!matcher.matches()) {
+                    delete(file);
+                    continue;
+                }
+                try {
+                    IndexSegment segment = IndexSegment.open(file);
+                    IndexSegment previous = segments.get(segment.getSiteId());
+                    if (previous == null || previous.getCreatedAt() < segment.getCreatedAt()) {
+                        segments.put(segment.getSiteId(), segment);
+                        if (previous != null) {
+                            delete(previous.getFile());
+                        }
+                    } else {
+                        delete(file);
+                    }
+                } catch (IOException e) {
+                    log.warn("Сегмент {} не открыт и будет удален: {}", file, e.getMessage());
+                    delete(file);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Не удалось прочитать каталог сегментов {}", directory, e);
+        }
+        return segments;
+    }
+
+    IndexSegment write(SegmentWriter writer) throws IOException {
+        Files.createDirectories(directory);
+        long createdAt = System.currentTimeMillis();
+        Path file = directory.resolve("site-" + writer.getSiteId() + "-" + createdAt + ".seg");
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try {
+            writer.write(temporary, createdAt);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return IndexSegment.open(file);
+    }
+
+    void delete(IndexSegment segment) {
+        delete(segment.getFile());
+    }
+
+    void deleteSite(int siteId) {
+        if (!isEnabled() || !Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "site-" + siteId + "-*")) {
+            for (Path file : files) {
+                delete(file);
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось удалить сегменты сайта {}: {}", siteId, e.getMessage());
+        }
+    }
+
+    /**
+     * Файл может быть ещё отображён в память (в Windows такой файл не удаляется),
+     * тогда он будет удалён при следующем запуске.
+     */
+    private void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Файл {} будет удален позже: {}", file, e.getMessage());
+        }
+    }
+}
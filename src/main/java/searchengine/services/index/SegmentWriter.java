@@ -0,0 +1,118 @@
+package searchengine.services.index;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Собирает сегмент сайта в формате {@link IndexSegment}.
+ * Страницы должны добавляться по возрастанию id.
+ */
+class SegmentWriter {
+
+    private final int siteId;
+    private final List<Term> terms = new ArrayList<>();
+    private final ByteArrayOutputStream pagePaths = new ByteArrayOutputStream();
+    private int[] pageEntries = new int[48];
+    private int pageCount;
+    private int maxPageId;
+
+    SegmentWriter(int siteId) {
+        this.siteId = siteId;
+    }
+
+    int getSiteId() {
+        return siteId;
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    void addTerm(String lemma, PostingList postings) {
+        if (postings.size() > 0) {
+            terms.add(new Term(lemma.getBytes(StandardCharsets.UTF_8), postings));
+        }
+    }
+
+    void addPage(int pageId, String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        if (pageEntries.length < (pageCount + 1) * 3) {
+            pageEntries = Arrays.copyOf(pageEntries, pageEntries.length * 2);
+        }
+        pageEntries[pageCount * 3] = pageId;
+        pageEntries[pageCount * 3 + 1] = pagePaths.size();
+        pageEntries[pageCount * 3 + 2] = bytes.length;
+        pagePaths.writeBytes(bytes);
+        pageCount++;
+        maxPageId = Math.max(maxPageId, pageId);
+    }
+
+    void write(Path file, long createdAt) throws IOException {
+        terms.sort((first, second) -> Arrays.compareUnsigned(first.bytes, second.bytes));
+
+        ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+        DataOutputStream postingOut = new DataOutputStream(postingBytes);
+        int[] termOffsets = new int[terms.size()];
+        int[] postingOffsets = new int[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            Term term = terms.get(i);
+            termOffsets[i] = termBytes.size();
+            termBytes.write(term.bytes);
+            postingOffsets[i] = postingOut.size();
+            term.postings.writeTo(postingOut);
+        }
+
+        long dictionaryOffset = IndexSegment.HEADER_SIZE;
+        long termsOffset = dictionaryOffset + (long) terms.size() * IndexSegment.DICTIONARY_ENTRY_SIZE;
+        long postingsOffset = termsOffset + termBytes.size();
+        long pagesOffset = postingsOffset + postingBytes.size();
+        long size = pagesOffset + (long) pageCount * IndexSegment.PAGE_ENTRY_SIZE + pagePaths.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Сегмент сайта " + siteId + " превышает 2 ГБ");
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(IndexSegment.MAGIC);
+            out.writeInt(IndexSegment.VERSION);
+            out.writeInt(siteId);
+            out.writeInt(pageCount);
+            out.writeInt(maxPageId);
+            out.writeInt(terms.size());
+            out.writeLong(createdAt);
+            out.writeInt((int) dictionaryOffset);
+            out.writeInt((int) termsOffset);
+            out.writeInt((int) postingsOffset);
+            out.writeInt((int) pagesOffset);
+
+            for (int i = 0; i < terms.size(); i++) {
+                Term term = terms.get(i);
+                out.writeInt(termOffsets[i]);
+                out.writeInt(term.bytes.length);
+                out.writeInt((int) postingsOffset + postingOffsets[i]);
+                out.writeInt(term.postings.size());
+            }
+            termBytes.writeTo(out);
+            postingBytes.writeTo(out);
+            for (int i = 0; i < pageCount * 3; i++) {
+                out.writeInt(pageEntries[i]);
+            }
+            pagePaths.writeTo(out);
+        }
+    }
+
+    private static class Term {
+        private final byte[] bytes;
+        private final PostingList postings;
+
+        private Term(byte[] bytes, PostingList postings) {
+            this.bytes = bytes;
+            this.postings = postings;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package searchengine.services.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.PipelineSettings;
+import searchengine.config.SitesList;
+import searchengine.dto.metrics.StageMetrics;
+import searchengine.model.ContentCodec;
+import searchengine.model.PageEntity;
+import searchengine.model.SiteEntity;
+import searchengine.repository.PageBatchRepository;
+import searchengine.repository.PageContentRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.services.crawler.CrawlJob;
+import searchengine.services.crawler.FetchedPage;
+import searchengine.services.impl.LemmaPositions;
+import searchengine.services.impl.LemmaService;
+import searchengine.services.index.IndexWriter;
+import searchengine.services.index.InvertedIndex;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Конвейер индексации загруженных страниц: разбор HTML и извлечение ссылок →
+ * лемматизация → запись в БД. Загрузку выполняет движок обхода, который
+ * передаёт страницы в {@link #submit}. Между стадиями стоят ограниченные
+ * очереди, поэтому при медленной БД обход сайта замедляется, а не копит
+ * страницы в памяти.
+ * <p>
+ * Страница и её HTML-код сохраняются в одной транзакции. Время статуса сайта
+ * обновляется отдельным запросом не чаще раза в {@value #STATUS_TIME_INTERVAL_MILLIS} мс.
+ */
+@Component
+@Slf4j
+public class IndexingPipeline {
+
+    static final int MAX_TITLE_LENGTH = 512;
+    static final long STATUS_TIME_INTERVAL_MILLIS = 1000;
+
+    private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
+    private final SiteRepository siteRepository;
+    private final LemmaService lemmaService;
+    private final IndexWriter indexWriter;
+    private final InvertedIndex invertedIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Integer, Long> statusTimeUpdates = new ConcurrentHashMap<>();
+
+    private final PipelineStage<PageTask> parseStage;
+    private final PipelineStage<PageTask> lemmaStage;
+    private final PipelineStage<PageTask> persistStage;
+
+    public IndexingPipeline(PageRepository pageRepository,
+                            PageContentRepository pageContentRepository,
+                            SiteRepository siteRepository,
+                            LemmaService lemmaService,
+                            IndexWriter indexWriter,
+                            InvertedIndex invertedIndex,
+                            TransactionTemplate transactionTemplate,
+                            SitesList sitesList) {
+        this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.siteRepository = siteRepository;
+        this.lemmaService = lemmaService;
+        this.indexWriter = indexWriter;
+        this.invertedIndex = invertedIndex;
+        this.transactionTemplate = transactionTemplate;
+
+        PipelineSettings settings = sitesList.getPipeline();
+        this.persistStage = new PipelineStage<>("persist", settings.getPersistThreads(),
+                settings.getQueueCapacity(), this::runPersist);
+        this.lemmaStage = new PipelineStage<>("lemmatize", settings.getLemmaThreads(),
+                settings.getQueueCapacity(), this::runLemmatize);
+        this.parseStage = new PipelineStage<>("parse", settings.getParseThreads(),
+                settings.getQueueCapacity(), this::runParse);
+    }
+
+    /**
+     * Ставит загруженную страницу в очередь разбора. Блокирует поток загрузки,
+     * если конвейер не успевает.
+     */
+    public void submit(CrawlJob job, SiteEntity site, FetchedPage page, String path, int depth)
+            throws InterruptedException {
+        submit(job, site, page, path, depth, null);
+    }
+
+    /**
+     * Ставит в очередь новую версию страницы; сохранённая версия replacedPageId
+     * остаётся в поиске, пока не записан индекс новой.
+     */
+    public void submit(CrawlJob job, SiteEntity site, FetchedPage page, String path, int depth,
+                       Integer replacedPageId) throws InterruptedException {
+        PageTask task = new PageTask(job, site, page, path, depth);
+        task.setReplacedPageId(replacedPageId);
+        try {
+            parseStage.submit(task);
+        } catch (InterruptedException e) {
+            task.complete();
+            throw e;
+        }
+    }
+
+    /**
+     * Проводит страницу через все стадии в вызывающем потоке.
+     * Используется для индексации отдельной страницы.
+     */
+    public void process(SiteEntity site, FetchedPage page, String path) {
+        process(site, page, path, null);
+    }
+
+    public void process(SiteEntity site, FetchedPage page, String path, Integer replacedPageId) {
+        PageTask task = new PageTask(null, site, page, path, 0);
+        task.setReplacedPageId(replacedPageId);
+        parse(task);
+        lemmatize(task);
+        persist(task);
+    }
+
+    public List<StageMetrics> getMetrics() {
+        return List.of(parseStage.getMetrics(), lemmaStage.getMetrics(), persistStage.getMetrics());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parseStage.shutdown();
+        lemmaStage.shutdown();
+        persistStage.shutdown();
+    }
+
+    private void runParse(PageTask task) {
+        try {
+            parse(task);
+            if (task.isAbandoned()) {
+                task.complete();
+                return;
+            }
+            lemmaStage.submit(task);
+        } catch (InterruptedException e) {
+            task.complete();
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            task.complete();
+            throw e;
+        }
+    }
+
+    private void runLemmatize(PageTask task) {
+        try {
+            lemmatize(task);
+            persistStage.submit(task);
+        } catch (InterruptedException e) {
+            task.complete();
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            task.complete();
+            throw e;
+        }
+    }
+
+    private void runPersist(PageTask task) {
+        try {
+            persist(task);
+        } finally {
+            task.complete();
+        }
+    }
+
+    private void parse(PageTask task) {
+        Document doc = Jsoup.parse(task.getPage().getHtml(), task.getPage().getUrl());
+
+        CrawlJob job = task.getJob();
+        if (job != null) {
+            if (job.isCancelled()) {
+                task.setAbandoned(true);
+                return;
+            }
+            job.offerAll(extractLinks(doc), task.getDepth() + 1);
+        }
+
+        task.setTitle(extractTitle(doc));
+        if (task.isIndexable()) {
+            task.setText(doc.text());
+        }
+    }
+
+    /**
+     * Абсолютные адреса всех ссылок страницы.
+     */
+    public static List<String> extractLinks(Document doc) {
+        List<String> links = new ArrayList<>();
+        for (Element link : doc.select("a[href]")) {
+            links.add(link.absUrl("href"));
+        }
+        return links;
+    }
+
+    static String extractTitle(Document doc) {
+        String title = doc.title();
+        return title.length() > MAX_TITLE_LENGTH ? title.substring(0, MAX_TITLE_LENGTH) : title;
+    }
+
+    private void lemmatize(PageTask task) {
+        if (task.getText() != null) {
+            LemmaPositions positions = new LemmaPositions();
+            task.setLemmas(lemmaService.collectLemmas(task.getText(), positions));
+            task.setPositions(positions);
+        }
+    }
+
+    private void persist(PageTask task) {
+        String fullUrl = task.getPage().getUrl();
+        SiteEntity siteEntity = task.getSite();
+
+        PageEntity page = new PageEntity();
+        page.setSite(siteEntity);
+        Integer replacedPageId = task.getReplacedPageId();
+        page.setPath(replacedPageId == null ? task.getPath() : PageBatchRepository.replacementPath(replacedPageId));
+        page.setCode(task.getPage().getStatusCode());
+        page.setTitle(task.getTitle());
+        page.setPlainText(task.getText() != null ? task.getText() : "");
+        page.setPositions(task.getPositions() != null ? task.getPositions().encode() : new byte[0]);
+        page.setEtag(task.getPage().getEtag());
+        page.setLastModified(task.getPage().getLastModified());
+        page.setContentHash(task.getPage().getContentHash());
+        byte[] content = ContentCodec.compress(task.getPage().getHtml());
+        PageEntity pageEntity;
+        try {
+            pageEntity = transactionTemplate.execute(status -> {
+                PageEntity saved = pageRepository.save(page);
+                pageContentRepository.upsert(saved.getId(), content);
+                return saved;
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.info("Страница уже существует (пропускаем дубликат): {}", fullUrl);
+            return;
+        }
+        invertedIndex.pageSaved(siteEntity.getId());
+        if (task.getPage().isTruncated()) {
+            // без хеша повторный обход не сочтёт страницу неизменившейся и загрузит её снова
+            log.warn("Страница {} больше max-body-size: сохранено и проиндексировано только её начало", fullUrl);
+        }
+
+        Map<String, Integer> lemmas = task.getLemmas();
+        if (lemmas != null || replacedPageId != null) {
+            try {
+                if (replacedPageId == null) {
+                    indexWriter.write(siteEntity.getId(), pageEntity.getId(), lemmas);
+                } else {
+                    indexWriter.replace(siteEntity.getId(), pageEntity.getId(),
+                            lemmas != null ? lemmas : Map.of(), replacedPageId, task.getPath());
+                }
+            } catch (DataAccessException e) {
+                log.warn("Страница {} не проиндексирована: не записана пачка индекса сайта {}",
+                        fullUrl, siteEntity.getId());
+            }
+        }
+
+        CrawlJob job = task.getJob();
+        if (job != null && !job.isCancelled()) {
+            touchStatusTime(siteEntity.getId());
+        }
+    }
+
+    /**
+     * Время статуса отмечает ход обхода, поэтому его достаточно обновлять
+     * раз в интервал, а не на каждой странице и не сохранением всей записи сайта.
+     */
+    private void touchStatusTime(int siteId) {
+        long now = System.currentTimeMillis();
+        Long previous = statusTimeUpdates.get(siteId);
+        if (previous != null && now - previous < STATUS_TIME_INTERVAL_MILLIS) {
+            return;
+        }
+        boolean claimed = previous == null
+                ? statusTimeUpdates.putIfAbsent(siteId, now) == null
+                : statusTimeUpdates.replace(siteId, previous, now);
+        if (claimed) {
+            siteRepository.updateStatusTime(siteId, LocalDateTime.now());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package searchengine.services.pipeline;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import searchengine.config.SitesList;
+import searchengine.model.ContentCodec;
+import searchengine.repository.PageBatchRepository;
+import searchengine.services.impl.LemmaPositions;
+import searchengine.services.impl.LemmaService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Приводит страницы, сохранённые старыми версиями, к текущему формату хранения.
+ * Работает в фоне после старта приложения пачками по {@value #BATCH_SIZE} страниц:
+ * <ol>
+ *     <li>переносит HTML-код из колонки page.content в page_content в сжатом виде;
+ *     пустая колонка удаляется, только если это разрешено настройкой
+ *     {@code indexing-settings.pipeline.drop-legacy-content};</li>
+ *     <li>заполняет заголовок, текст и позиции слов страниц; пока страница
+ *     не обработана, поиск строит сниппет с лемматизацией текста.</li>
+ * </ol>
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PageStorageBackfill {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final PageBatchRepository pageBatchRepository;
+    private final LemmaService lemmaService;
+    private final SitesList sitesList;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startAsync() {
+        boolean legacyContent;
+        try {
+            legacyContent = pageBatchRepository.hasLegacyContentColumn();
+            if (legacyContent && !pageBatchRepository.isLegacyContentNullable()) {
+                log.info("Колонка page.content старой версии переводится в допускающую NULL: HTML новых страниц хранится в page_content");
+                pageBatchRepository.makeLegacyContentNullable();
+            }
+        } catch (Exception e) {
+            log.error("Не удалось проверить схему таблицы page", e);
+            return;
+        }
+
+        Thread worker = new Thread(() -> run(legacyContent), "page-storage-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run(boolean legacyContent) {
+        try {
+            if (legacyContent) {
+                moveLegacyContent();
+            }
+            fillText();
+        } catch (Exception e) {
+            log.error("Ошибка при обновлении хранения страниц", e);
+        }
+    }
+
+    private void moveLegacyContent() {
+        long start = System.currentTimeMillis();
+        int lastId = 0;
+        int total = 0;
+        while (true) {
+            List<PageBatchRepository.PageContent> batch = new ArrayList<>();
+            pageBatchRepository.findPagesWithLegacyContent(lastId, BATCH_SIZE, (pageId, content) ->
+                    batch.add(new PageBatchRepository.PageContent(pageId, ContentCodec.compress(content))));
+            if (batch.isEmpty()) {
+                break;
+            }
+            pageBatchRepository.moveLegacyContent(batch);
+            lastId = batch.get(batch.size() - 1).getPageId();
+            total += batch.size();
+        }
+        log.info("HTML-код {} страниц перенесен в page_content за {} мс",
+                total, System.currentTimeMillis() - start);
+        if (sitesList.getPipeline().isDropLegacyContent()) {
+            pageBatchRepository.dropLegacyContentColumn();
+            log.info("Колонка page.content удалена");
+        } else {
+            log.info("Колонка page.content пуста и больше не используется; для её удаления " +
+                    "включите indexing-settings.pipeline.drop-legacy-content");
+        }
+    }
+
+    private void fillText() {
+        long start = System.currentTimeMillis();
+        int lastId = 0;
+        int total = 0;
+        while (true) {
+            List<PageBatchRepository.PageText> batch = new ArrayList<>();
+            pageBatchRepository.findPagesWithoutText(lastId, BATCH_SIZE, (pageId, code, data) -> {
+                Document doc = Jsoup.parse(data == null ? "" : ContentCodec.decompress(data));
+                String text = PageTask.isIndexable(code) ? doc.text() : "";
+                LemmaPositions positions = new LemmaPositions();
+                lemmaService.collectLemmas(text, positions);
+                batch.add(new PageBatchRepository.PageText(pageId, IndexingPipeline.extractTitle(doc), text,
+                        positions.encode()));
+            });
+            if (batch.isEmpty()) {
+                break;
+            }
+            pageBatchRepository.updatePageText(batch);
+            lastId = batch.get(batch.size() - 1).getPageId();
+            total += batch.size();
+        }
+        if (total > 0) {
+            log.info("Текст, заголовки и позиции слов заполнены для {} страниц за {} мс",
+                    total, System.currentTimeMillis() - start);
+        }
+    }
+}
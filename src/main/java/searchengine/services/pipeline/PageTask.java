@@ -0,0 +1,70 @@
+package searchengine.services.pipeline;
+
+import lombok.Getter;
+import lombok.Setter;
+import searchengine.model.SiteEntity;
+import searchengine.services.crawler.CrawlJob;
+import searchengine.services.crawler.FetchedPage;
+import searchengine.services.impl.LemmaPositions;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Страница, проходящая через стадии конвейера. Каждая стадия дописывает
+ * свой результат; последняя стадия вызывает {@link #complete()}.
+ */
+@Getter
+@Setter
+public class PageTask {
+    private final CrawlJob job;
+    private final SiteEntity site;
+    private final FetchedPage page;
+    private final String path;
+    /** Глубина страницы от главной; ссылки с неё получают глубину на единицу больше. */
+    private final int depth;
+    private String title;
+    private String text;
+    private Map<String, Integer> lemmas;
+    private LemmaPositions positions;
+    /**
+     * Сохранённая версия страницы, которую заменяет эта. Она удаляется
+     * в одной транзакции с записью индекса новой версии.
+     */
+    private Integer replacedPageId;
+    /**
+     * Обход остановлен до того, как ссылки страницы попали в журнал; такую
+     * страницу нельзя сохранять, иначе продолженный обход не дойдёт до её ссылок.
+     */
+    private boolean abandoned;
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    public PageTask(CrawlJob job, SiteEntity site, FetchedPage page, String path, int depth) {
+        this.job = job;
+        this.site = site;
+        this.page = page;
+        this.path = path;
+        this.depth = depth;
+        if (job != null) {
+            job.retain();
+        }
+    }
+
+    public boolean isIndexable() {
+        return isIndexable(page.getStatusCode());
+    }
+
+    static boolean isIndexable(int statusCode) {
+        return statusCode >= 200 && statusCode < 400;
+    }
+
+    /**
+     * Сообщает обходу, что страница обработана. Повторные вызовы игнорируются.
+     */
+    public void complete() {
+        if (job != null && completed.compareAndSet(false, true)) {
+            job.release();
+        }
+    }
+}
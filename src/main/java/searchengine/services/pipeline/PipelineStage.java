@@ -0,0 +1,89 @@
+package searchengine.services.pipeline;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import searchengine.dto.metrics.StageMetrics;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Стадия конвейера: ограниченная очередь и собственный набор потоков-обработчиков.
+ * {@link #submit} блокируется, пока в очереди нет места, поэтому медленная
+ * стадия притормаживает все стадии перед ней.
+ */
+@Slf4j
+public class PipelineStage<T> {
+
+    @Getter
+    private final String name;
+    private final int threads;
+    private final int capacity;
+    private final BlockingQueue<T> queue;
+    private final Consumer<T> worker;
+    private final ExecutorService executor;
+
+    private final AtomicInteger busy = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private final ThroughputMeter throughput = new ThroughputMeter();
+
+    public PipelineStage(String name, int threads, int capacity, Consumer<T> worker) {
+        this.name = name;
+        this.threads = Math.max(1, threads);
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        this.worker = worker;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(name + "-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(this.threads, threadFactory);
+        for (int i = 0; i < this.threads; i++) {
+            executor.execute(this::run);
+        }
+    }
+
+    public void submit(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    public StageMetrics getMetrics() {
+        StageMetrics metrics = new StageMetrics();
+        metrics.setName(name);
+        metrics.setThreads(threads);
+        metrics.setBusyThreads(busy.get());
+        metrics.setQueueSize(queue.size());
+        metrics.setQueueCapacity(capacity);
+        metrics.setProcessed(processed.sum());
+        metrics.setThroughput(throughput.perSecond());
+        return metrics;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            T item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            busy.incrementAndGet();
+            try {
+                worker.accept(item);
+            } catch (Exception e) {
+                log.error("Ошибка на стадии {}", name, e);
+            } finally {
+                busy.decrementAndGet();
+                processed.increment();
+                throughput.mark();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package searchengine.services.pipeline;
+
+/**
+ * Считает число событий за последнюю минуту в посекундных корзинах.
+ */
+public class ThroughputMeter {
+
+    private static final int WINDOW_SECONDS = 60;
+
+    private final long[] bucketSecond = new long[WINDOW_SECONDS];
+    private final long[] bucketCount = new long[WINDOW_SECONDS];
+
+    public synchronized void mark() {
+        long second = System.currentTimeMillis() / 1000;
+        int bucket = (int) (second % WINDOW_SECONDS);
+        if (bucketSecond[bucket] != second) {
+            bucketSecond[bucket] = second;
+            bucketCount[bucket] = 0;
+        }
+        bucketCount[bucket]++;
+    }
+
+    /** Среднее число событий в секунду за последнюю минуту. */
+    public synchronized double perSecond() {
+        long second = System.currentTimeMillis() / 1000;
+        long total = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            if (second - bucketSecond[i] < WINDOW_SECONDS) {
+                total += bucketCount[i];
+            }
+        }
+        return (double) total / WINDOW_SECONDS;
+    }
+}
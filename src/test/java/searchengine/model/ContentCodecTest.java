@@ -0,0 +1,44 @@
+package searchengine.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentCodecTest {
+
+    @Test
+    void roundTripsUnicodeHtml() {
+        String html = "<html><head><title>Поиск</title></head><body>Привет, мир! ёЁ € 😀</body></html>";
+
+        assertEquals(html, ContentCodec.decompress(ContentCodec.compress(html)));
+    }
+
+    @Test
+    void roundTripsEmptyContent() {
+        assertEquals("", ContentCodec.decompress(ContentCodec.compress("")));
+    }
+
+    @Test
+    void compressesLargeRepetitivePage() {
+        String html = "<div class=\"item\">Страница каталога</div>\n".repeat(10_000);
+
+        byte[] compressed = ContentCodec.compress(html);
+
+        assertTrue(compressed.length < html.length() / 20);
+        assertEquals(html, ContentCodec.decompress(compressed));
+    }
+
+    @Test
+    void rejectsCorruptedData() {
+        byte[] compressed = ContentCodec.compress("<p>" + "текст ".repeat(1000) + "</p>");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> ContentCodec.decompress(Arrays.copyOf(compressed, compressed.length / 2)));
+        assertThrows(IllegalArgumentException.class,
+                () -> ContentCodec.decompress(new byte[]{1, 2, 3, 4, 5}));
+    }
+}
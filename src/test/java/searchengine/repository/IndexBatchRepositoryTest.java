@@ -0,0 +1,68 @@
+package searchengine.repository;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class IndexBatchRepositoryTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final IndexBatchRepository repository = new IndexBatchRepository(jdbcTemplate);
+
+    @Test
+    void countsLemmasPerSiteWithoutJoiningLemmaTable() throws Exception {
+        List<String> sql = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        ResultSet row = mock(ResultSet.class);
+        when(row.getInt("page_id")).thenReturn(42);
+        when(row.getFloat("relevance")).thenReturn(7f);
+        doAnswer(invocation -> {
+            sql.add(invocation.getArgument(0));
+            Object[] arguments = invocation.getArguments();
+            args.addAll(Arrays.asList(arguments).subList(2, arguments.length));
+            invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), ArgumentMatchers.<Object>any());
+
+        Map<Integer, Set<Integer>> lemmaIdsBySite = new LinkedHashMap<>();
+        lemmaIdsBySite.put(1, new LinkedHashSet<>(List.of(10, 11)));
+        lemmaIdsBySite.put(2, new LinkedHashSet<>(List.of(20)));
+        Map<Integer, Float> ranks = repository.sumRanksOfPagesWithAllLemmas(lemmaIdsBySite);
+
+        assertEquals(Map.of(42, 7f), ranks);
+        assertEquals(1, sql.size());
+        String query = sql.get(0);
+        assertFalse(query.contains("JOIN"));
+        assertTrue(query.contains("WHERE i.lemma_id IN (?, ?, ?)"));
+        assertTrue(query.contains("GROUP BY i.page_id HAVING"));
+        assertTrue(query.endsWith("CASE WHEN MIN(i.lemma_id) IN (?, ?) THEN 2 WHEN MIN(i.lemma_id) IN (?) THEN 1 END"));
+        assertEquals(List.of(10, 11, 20, 10, 11, 20), args);
+    }
+
+    @Test
+    void skipsQueryWithoutLemmas() {
+        assertTrue(repository.sumRanksOfPagesWithAllLemmas(Map.of()).isEmpty());
+        assertTrue(repository.sumRanksOfPagesWithAllLemmas(Map.of(1, Set.of())).isEmpty());
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
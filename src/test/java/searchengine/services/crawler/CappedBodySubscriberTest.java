@@ -0,0 +1,91 @@
+package searchengine.services.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CappedBodySubscriberTest {
+
+    @Test
+    void collectsWholeBodyBelowLimit() throws Exception {
+        CappedBodySubscriber subscriber = new CappedBodySubscriber(100);
+        Subscription subscription = new Subscription();
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(List.of(bytes("<html>"), bytes("</html>")));
+        subscriber.onComplete();
+
+        assertArrayEquals(bytes("<html></html>").array(), subscriber.getBody().toCompletableFuture().get());
+        assertFalse(subscription.cancelled);
+        assertFalse(subscriber.isTruncated());
+        assertEquals(2, subscription.requested);
+    }
+
+    @Test
+    void cancelsTransferAtLimit() throws Exception {
+        CappedBodySubscriber subscriber = new CappedBodySubscriber(8);
+        Subscription subscription = new Subscription();
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(List.of(bytes("12345"), bytes("67890")));
+        subscriber.onNext(List.of(bytes("ignored")));
+
+        assertArrayEquals(bytes("12345678").array(), subscriber.getBody().toCompletableFuture().get());
+        assertTrue(subscription.cancelled);
+        assertTrue(subscriber.isTruncated());
+    }
+
+    @Test
+    void skipsBodyWithZeroLimit() throws Exception {
+        CappedBodySubscriber subscriber = new CappedBodySubscriber(0);
+        Subscription subscription = new Subscription();
+        subscriber.onSubscribe(subscription);
+
+        assertEquals(0, subscriber.getBody().toCompletableFuture().get().length);
+        assertTrue(subscription.cancelled);
+        assertEquals(0, subscription.requested);
+    }
+
+    @Test
+    void passesTransferErrorAndCancelsOnRequest() {
+        CappedBodySubscriber subscriber = new CappedBodySubscriber(100);
+        Subscription subscription = new Subscription();
+        subscriber.onSubscribe(subscription);
+        subscriber.cancel();
+        subscriber.onError(new IOException("connection reset"));
+
+        assertTrue(subscription.cancelled);
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> subscriber.getBody().toCompletableFuture().get());
+        assertInstanceOf(IOException.class, error.getCause());
+    }
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static final class Subscription implements Flow.Subscription {
+        private long requested;
+        private boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package searchengine.services.crawler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.SitesList;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrontierStoreTest {
+
+    private static final int SITE = 3;
+
+    @TempDir
+    Path directory;
+
+    private FrontierStore store;
+
+    @BeforeEach
+    void setUp() {
+        SitesList sitesList = new SitesList();
+        sitesList.setFrontierDir(directory.toString());
+        store = new FrontierStore(sitesList);
+    }
+
+    @Test
+    void readsUrlsInOrderWithSmallestDepth() throws IOException {
+        try (FrontierJournal journal = store.open(SITE, false)) {
+            journal.append("https://example.com/", 0);
+            journal.append("https://example.com/b", 2);
+            journal.append("https://example.com/a", 1);
+            journal.append("https://example.com/b", 1);
+            journal.flush();
+        }
+
+        Map<String, Integer> urls = store.read(SITE);
+
+        assertEquals(Map.of("https://example.com/", 0, "https://example.com/b", 1, "https://example.com/a", 1), urls);
+        assertEquals("https://example.com/b", urls.keySet().toArray()[1]);
+    }
+
+    @Test
+    void skipsLineCutOffByCrashAndCorruptLines() throws IOException {
+        write("0 https://example.com/\n\nxx https://example.com/x\n1 https://example.com/a\n1 https://exa");
+
+        assertEquals(Map.of("https://example.com/", 0, "https://example.com/a", 1), store.read(SITE));
+    }
+
+    @Test
+    void resumedJournalDropsIncompleteLineBeforeAppending() throws IOException {
+        write("0 https://example.com/\n1 https://exa");
+
+        try (FrontierJournal journal = store.open(SITE, true)) {
+            journal.append("https://example.com/c", 2);
+            journal.flush();
+        }
+
+        assertEquals("0 https://example.com/\n2 https://example.com/c\n", read());
+        assertEquals(Map.of("https://example.com/", 0, "https://example.com/c", 2), store.read(SITE));
+    }
+
+    @Test
+    void truncatesLineLongerThanReadBlock() throws IOException {
+        write("0 https://example.com/\n1 https://example.com/" + "x".repeat(10_000));
+
+        store.open(SITE, true).close();
+
+        assertEquals("0 https://example.com/\n", read());
+    }
+
+    @Test
+    void truncatesJournalWithoutCompleteLines() throws IOException {
+        write("0 https://exa");
+
+        store.open(SITE, true).close();
+
+        assertEquals("", read());
+        assertTrue(store.read(SITE).isEmpty());
+    }
+
+    @Test
+    void newCrawlStartsJournalOver() throws IOException {
+        write("0 https://example.com/old\n");
+
+        try (FrontierJournal journal = store.open(SITE, false)) {
+            journal.append("https://example.com/", 0);
+        }
+
+        assertEquals(Map.of("https://example.com/", 0), store.read(SITE));
+        store.delete(SITE);
+        assertFalse(store.exists(SITE));
+    }
+
+    @Test
+    void writeErrorMarksJournalFailed() {
+        FrontierJournal journal = new FrontierJournal(SITE, new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("No space left on device");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        journal.append("https://example.com/", 0);
+        journal.append("https://example.com/a", 1);
+
+        assertTrue(journal.isFailed());
+    }
+
+    @Test
+    void disabledWithoutDirectory() {
+        SitesList sitesList = new SitesList();
+        sitesList.setFrontierDir("");
+        FrontierStore disabled = new FrontierStore(sitesList);
+
+        assertFalse(disabled.isEnabled());
+        assertFalse(disabled.exists(SITE));
+        assertNull(disabled.open(SITE, false));
+    }
+
+    private void write(String content) throws IOException {
+        Files.writeString(file(), content, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private String read() throws IOException {
+        return Files.readString(file(), StandardCharsets.UTF_8);
+    }
+
+    private Path file() {
+        return directory.resolve("site-" + SITE + ".frontier");
+    }
+}
@@ -0,0 +1,120 @@
+package searchengine.services.crawler;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import searchengine.config.SitesList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageFetcherTest {
+
+    private static final String SMALL = "<html><body>дом</body></html>";
+    private static final String LARGE = "<html><body>" + "дом ".repeat(1000) + "</body></html>";
+
+    private HttpServer server;
+    private PageFetcher fetcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            boolean gzip = exchange.getRequestURI().getPath().startsWith("/gzip");
+            String html = exchange.getRequestURI().getPath().endsWith("/large") ? LARGE : SMALL;
+            byte[] body = gzip ? gzip(html) : html.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            } catch (IOException e) {
+                // клиент закрыл соединение, получив предел
+            }
+        });
+        server.start();
+        SitesList sitesList = new SitesList();
+        sitesList.getFetcher().setHttp2(false);
+        sitesList.getFetcher().setMaxBodySize(DataSize.ofBytes(1024));
+        fetcher = new PageFetcher(sitesList);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void loadsPageBelowLimitCompletely() throws IOException {
+        for (String path : new String[]{"/small", "/gzip/small"}) {
+            FetchedPage page = fetcher.fetch(url(path));
+
+            assertEquals(SMALL, page.getHtml());
+            assertFalse(page.isTruncated());
+            assertNotNull(page.getContentHash());
+        }
+    }
+
+    @Test
+    void marksPageCutAtLimitAsTruncatedWithoutHash() throws IOException {
+        for (String path : new String[]{"/large", "/gzip/large"}) {
+            FetchedPage page = fetcher.fetch(url(path));
+
+            assertTrue(page.isTruncated(), path);
+            assertTrue(page.getHtml().length() < LARGE.length(), path);
+            assertNull(page.getContentHash(), path);
+        }
+    }
+
+    @Test
+    void readsRetryAfterInSeconds() {
+        assertEquals(Duration.ofSeconds(120), PageFetcher.retryAfter(" 120 "));
+        assertEquals(Duration.ZERO, PageFetcher.retryAfter("0"));
+    }
+
+    @Test
+    void readsRetryAfterAsHttpDate() {
+        String inMinute = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(60));
+        Duration wait = PageFetcher.retryAfter(inMinute);
+
+        assertTrue(wait.compareTo(Duration.ofSeconds(55)) > 0 && wait.compareTo(Duration.ofSeconds(61)) <= 0);
+        assertEquals(Duration.ZERO, PageFetcher.retryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    @Test
+    void ignoresMissingOrUnknownRetryAfter() {
+        assertNull(PageFetcher.retryAfter(null));
+        assertNull(PageFetcher.retryAfter(" "));
+        assertNull(PageFetcher.retryAfter("later"));
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(bytes)) {
+            output.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
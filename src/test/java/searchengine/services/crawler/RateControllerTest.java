@@ -0,0 +1,117 @@
+package searchengine.services.crawler;
+
+import org.junit.jupiter.api.Test;
+import searchengine.config.RateSettings;
+import searchengine.config.SeenSetSettings;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateControllerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final RateSettings settings = new RateSettings();
+    private final CrawlJob job = new CrawlJob("https://example.com", 2, 150, new SeenSetSettings(),
+            (crawl, page, depth) -> {
+            });
+
+    @Test
+    void startsFromSiteSettings() {
+        RateController rate = new RateController(job, settings);
+
+        assertEquals(2, rate.concurrencyLimit());
+        assertEquals(150 * MS, rate.delayNanos());
+        assertEquals(0, rate.latencyMillis());
+    }
+
+    @Test
+    void speedsUpUpToLimitsWhileLatencyIsSteady() {
+        RateController rate = new RateController(job, settings);
+        long now = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            rate.onResponse(10 * MS, now + i * MS);
+        }
+
+        assertEquals(settings.getMaxConcurrency(), rate.concurrencyLimit());
+        assertEquals(settings.getMinDelay().toNanos(), rate.delayNanos());
+        assertEquals(10, rate.latencyMillis());
+    }
+
+    @Test
+    void halvesSpeedOncePerRoundWhenThrottled() {
+        RateController rate = new RateController(job, settings);
+        long now = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+
+        rate.onThrottled(null, now);
+        assertEquals(1, rate.concurrencyLimit());
+        assertEquals(300 * MS, rate.delayNanos());
+
+        rate.onThrottled(null, now + MS);
+        assertEquals(300 * MS, rate.delayNanos());
+
+        rate.onThrottled(null, now + 301 * MS);
+        assertEquals(600 * MS, rate.delayNanos());
+    }
+
+    @Test
+    void slowsDownWhenLatencyGrows() {
+        RateController rate = new RateController(job, settings);
+        long now = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            rate.onResponse(10 * MS, now + i * MS);
+        }
+        int concurrency = rate.concurrencyLimit();
+        long delay = rate.delayNanos();
+
+        long later = now + TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < 5; i++) {
+            rate.onResponse(200 * MS, later + i * MS);
+        }
+
+        assertTrue(rate.concurrencyLimit() < concurrency);
+        assertTrue(rate.delayNanos() > delay);
+    }
+
+    @Test
+    void pausesForRetryAfterUpToLimit() {
+        RateController rate = new RateController(job, settings);
+        long now = System.nanoTime();
+
+        rate.onThrottled(Duration.ofSeconds(5), now);
+        assertEquals(now + TimeUnit.SECONDS.toNanos(5), rate.pausedUntil());
+
+        rate.onThrottled(Duration.ofHours(1), now);
+        assertEquals(now + settings.getMaxRetryAfter().toNanos(), rate.pausedUntil());
+    }
+
+    @Test
+    void keepsFixedRateWhenNotAdaptiveButHonoursRetryAfter() {
+        settings.setAdaptive(false);
+        RateController rate = new RateController(job, settings);
+        long now = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < 100; i++) {
+            rate.onResponse(10 * MS, now + i * MS);
+        }
+        rate.onThrottled(Duration.ofSeconds(1), now);
+
+        assertEquals(2, rate.concurrencyLimit());
+        assertEquals(150 * MS, rate.delayNanos());
+        assertEquals(now + TimeUnit.SECONDS.toNanos(1), rate.pausedUntil());
+    }
+
+    @Test
+    void neverGoesBelowCrawlDelay() {
+        job.setMinDelayMillis(1000);
+        RateController rate = new RateController(job, settings);
+        long now = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            rate.onResponse(10 * MS, now + i * MS);
+        }
+
+        assertEquals(1000 * MS, rate.delayNanos());
+    }
+}
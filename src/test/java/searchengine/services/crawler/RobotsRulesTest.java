@@ -0,0 +1,88 @@
+package searchengine.services.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RobotsRulesTest {
+
+    @Test
+    void appliesOnlyGroupForAllAgents() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: Googlebot
+                Disallow: /
+
+                User-agent: *
+                Disallow: /private
+                """);
+
+        assertTrue(rules.isAllowed("https://example.com/"));
+        assertTrue(rules.isAllowed("https://example.com/news"));
+        assertFalse(rules.isAllowed("https://example.com/private/page"));
+    }
+
+    @Test
+    void longestMatchWinsAndAllowWinsTie() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /shop
+                Allow: /shop/catalog
+                Disallow: /page
+                Allow: /page
+                """);
+
+        assertFalse(rules.isAllowed("https://example.com/shop/cart"));
+        assertTrue(rules.isAllowed("https://example.com/shop/catalog/1"));
+        assertTrue(rules.isAllowed("https://example.com/page"));
+    }
+
+    @Test
+    void supportsWildcardsAndEndAnchor() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /*.pdf$
+                Disallow: /*?sort=
+                """);
+
+        assertFalse(rules.isAllowed("https://example.com/docs/report.pdf"));
+        assertTrue(rules.isAllowed("https://example.com/docs/report.pdf?download=1"));
+        assertFalse(rules.isAllowed("https://example.com/list?sort=price"));
+        assertTrue(rules.isAllowed("https://example.com/list?page=2"));
+    }
+
+    @Test
+    void sharesRulesBetweenConsecutiveAgentLines() {
+        RobotsRules rules = RobotsRules.parse("User-agent: Yandex\nUser-agent: *\nDisallow: /admin # служебное\n");
+
+        assertFalse(rules.isAllowed("https://example.com/admin"));
+    }
+
+    @Test
+    void readsCrawlDelayAndSitemaps() {
+        RobotsRules rules = RobotsRules.parse("""
+                Sitemap: https://example.com/sitemap.xml
+                User-agent: Bot
+                Crawl-delay: 30
+
+                User-agent: *
+                Crawl-delay: 1.5
+                Sitemap: https://example.com/news.xml
+                """);
+
+        assertEquals(1500, rules.getCrawlDelayMillis());
+        assertEquals(List.of("https://example.com/sitemap.xml", "https://example.com/news.xml"), rules.getSitemaps());
+    }
+
+    @Test
+    void ignoresMalformedLines() {
+        RobotsRules rules = RobotsRules.parse("garbage\nUser-agent: *\nDisallow:\nCrawl-delay: soon\n");
+
+        assertTrue(rules.isAllowed("https://example.com/anything"));
+        assertEquals(0, rules.getCrawlDelayMillis());
+        assertTrue(RobotsRules.ALLOW_ALL.isAllowed("https://example.com/private"));
+    }
+}
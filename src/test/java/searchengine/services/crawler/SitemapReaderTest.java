@@ -0,0 +1,131 @@
+package searchengine.services.crawler;
+
+import org.jsoup.HttpStatusException;
+import org.junit.jupiter.api.Test;
+import searchengine.config.SitesList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SitemapReaderTest {
+
+    private final Map<String, byte[]> documents = new HashMap<>();
+    private final List<String> requested = new ArrayList<>();
+    private final SitemapReader reader = new SitemapReader(new StubFetcher(), new SitesList());
+
+    @Test
+    void readsUrlSetWithLastModified() {
+        serve("https://example.com/sitemap.xml", urlset(
+                "<url><loc> https://example.com/a </loc><lastmod>2024-05-01</lastmod></url>"
+                        + "<url><loc>https://example.com/b</loc><image:image><image:loc>https://cdn.example.com/1.png"
+                        + "</image:loc></image:image></url>"));
+
+        List<String> entries = new ArrayList<>();
+        int read = reader.read("https://example.com", List.of(), (url, lastModified) ->
+                entries.add(url + " " + lastModified));
+
+        assertEquals(2, read);
+        assertEquals(List.of("https://example.com/a 2024-05-01T00:00:00Z", "https://example.com/b null"), entries);
+    }
+
+    @Test
+    void followsNestedSitemapsOnlyOnSiteHost() throws IOException {
+        serve("https://example.com/index.xml", """
+                <sitemapindex xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+                  <sitemap><loc>https://example.com/part1.xml.gz</loc></sitemap>
+                  <sitemap><loc>https://other.org/part2.xml</loc></sitemap>
+                </sitemapindex>
+                """.getBytes(StandardCharsets.UTF_8));
+        serve("https://example.com/part1.xml.gz", gzip(urlset("<url><loc>https://example.com/c</loc></url>")));
+        serve("https://other.org/part2.xml", urlset("<url><loc>https://other.org/x</loc></url>"));
+
+        List<String> urls = new ArrayList<>();
+        reader.read("https://example.com/", List.of("https://example.com/index.xml"), (url, lastModified) -> urls.add(url));
+
+        assertEquals(List.of("https://example.com/c"), urls);
+        assertFalse(requested.contains("https://other.org/part2.xml"));
+    }
+
+    @Test
+    void stopsWhenConsumerDeclines() {
+        serve("https://example.com/sitemap.xml", urlset("<url><loc>https://example.com/1</loc></url>"
+                + "<url><loc>https://example.com/2</loc></url><url><loc>https://example.com/3</loc></url>"));
+
+        List<String> urls = new ArrayList<>();
+        reader.read("https://example.com", List.of(), (url, lastModified) -> urls.add(url) && urls.size() < 2);
+
+        assertEquals(List.of("https://example.com/1", "https://example.com/2"), urls);
+    }
+
+    @Test
+    void skipsMissingSitemap() {
+        assertEquals(0, reader.read("https://example.com", List.of(), (url, lastModified) -> true));
+        assertEquals(List.of("https://example.com/sitemap.xml"), requested);
+    }
+
+    @Test
+    void parsesW3cDates() {
+        assertEquals(Instant.parse("2024-05-01T00:00:00Z"), SitemapReader.parseLastModified("2024-05-01"));
+        assertEquals(Instant.parse("2024-05-01T07:30:00Z"), SitemapReader.parseLastModified("2024-05-01T10:30:00+03:00"));
+        assertEquals(Instant.parse("2024-05-01T10:30:00Z"), SitemapReader.parseLastModified("2024-05-01T10:30:00"));
+        assertNull(SitemapReader.parseLastModified("вчера"));
+    }
+
+    @Test
+    void checksNestedSitemapHost() {
+        assertTrue(SitemapReader.isOnHost("HTTPS://Example.com/sitemap2.xml", "https://example.com"));
+        assertFalse(SitemapReader.isOnHost("http://example.com/sitemap2.xml", "https://example.com"));
+        assertFalse(SitemapReader.isOnHost("https://example.com.evil.org/s.xml", "https://example.com"));
+        assertFalse(SitemapReader.isOnHost("not a url", "https://example.com"));
+    }
+
+    private void serve(String url, byte[] body) {
+        documents.put(url, body);
+    }
+
+    private static byte[] urlset(String entries) {
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\""
+                + " xmlns:image=\"http://www.google.com/schemas/sitemap-image/1.1\">"
+                + entries + "</urlset>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(bytes)) {
+            output.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private class StubFetcher extends PageFetcher {
+
+        StubFetcher() {
+            super(new SitesList());
+        }
+
+        @Override
+        public InputStream openStream(String url) throws IOException {
+            requested.add(url);
+            byte[] body = documents.get(url);
+            if (body == null) {
+                throw new HttpStatusException("HTTP 404", 404, url);
+            }
+            return new ByteArrayInputStream(body);
+        }
+    }
+}
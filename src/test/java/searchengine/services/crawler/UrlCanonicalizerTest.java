@@ -0,0 +1,62 @@
+package searchengine.services.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UrlCanonicalizerTest {
+
+    @Test
+    void normalizesSchemeHostPortAndPath() {
+        assertEquals("https://example.com/news", UrlCanonicalizer.canonicalize("HTTPS://Example.COM:443/news/"));
+        assertEquals("http://example.com/", UrlCanonicalizer.canonicalize("http://example.com.:80"));
+        assertEquals("http://example.com:8080/a/c", UrlCanonicalizer.canonicalize("http://example.com:8080/a/b/../c"));
+        assertEquals("https://example.com/page", UrlCanonicalizer.canonicalize(" https://example.com/page#top "));
+    }
+
+    @Test
+    void dropsTrackingAndSessionParameters() {
+        assertEquals("https://example.com/list?page=2&sort=name", UrlCanonicalizer.canonicalize(
+                "https://example.com/list?utm_source=mail&page=2&PHPSESSID=abc&sort=name&gclid=1"));
+        assertEquals("https://example.com/list", UrlCanonicalizer.canonicalize(
+                "https://example.com/list?utm_medium=x&sid=1"));
+        assertEquals("https://example.com/cart", UrlCanonicalizer.canonicalize(
+                "https://example.com/cart;jsessionid=ABC123"));
+    }
+
+    @Test
+    void rejectsNonHttpAndMalformedAddresses() {
+        assertNull(UrlCanonicalizer.canonicalize(null));
+        assertNull(UrlCanonicalizer.canonicalize(""));
+        assertNull(UrlCanonicalizer.canonicalize("mailto:user@example.com"));
+        assertNull(UrlCanonicalizer.canonicalize("ftp://example.com/file"));
+        assertNull(UrlCanonicalizer.canonicalize("/relative/path"));
+        assertNull(UrlCanonicalizer.canonicalize("http://exa mple.com/{bad}"));
+    }
+
+    @Test
+    void computesPathAndOrigin() {
+        String base = UrlCanonicalizer.canonicalizeBase("https://example.com/");
+
+        assertEquals("https://example.com", base);
+        assertEquals("/", UrlCanonicalizer.pathOf("https://example.com", base));
+        assertEquals("/news?page=2", UrlCanonicalizer.pathOf("https://example.com/news?page=2", base));
+        assertEquals("https://example.com:8443", UrlCanonicalizer.originOf("https://example.com:8443/a?b=1"));
+        assertEquals("https://example.com", UrlCanonicalizer.originOf("https://example.com?q=1"));
+        assertEquals("https://example.com", UrlCanonicalizer.originOf("https://example.com"));
+    }
+
+    @Test
+    void checksThatAddressBelongsToSite() {
+        String base = "https://example.com/blog";
+
+        assertTrue(UrlCanonicalizer.isWithin("https://example.com/blog", base));
+        assertTrue(UrlCanonicalizer.isWithin("https://example.com/blog/post", base));
+        assertTrue(UrlCanonicalizer.isWithin("https://example.com/blog?page=2", base));
+        assertFalse(UrlCanonicalizer.isWithin("https://example.com/blogger", base));
+        assertFalse(UrlCanonicalizer.isWithin("https://example.com.evil.org/blog", base));
+    }
+}
@@ -0,0 +1,86 @@
+package searchengine.services.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UrlSeenSetTest {
+
+    /** Наименьший допустимый объём: таблица на 1024 ячейки, до 512 адресов. */
+    private static final long MIN_BYTES = 1024 * Long.BYTES;
+
+    @Test
+    void reportsRepeatedAddressAsSeen() {
+        UrlSeenSet seen = new UrlSeenSet(1 << 20, false);
+
+        assertEquals(UrlSeenSet.Result.ADDED, seen.add("https://example.com/a"));
+        assertEquals(UrlSeenSet.Result.ADDED, seen.add("https://example.com/b"));
+        assertEquals(UrlSeenSet.Result.SEEN, seen.add("https://example.com/a"));
+        assertEquals(2, seen.size());
+    }
+
+    @Test
+    void growsWithinMemoryLimit() {
+        UrlSeenSet seen = new UrlSeenSet(1 << 20, false);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(UrlSeenSet.Result.ADDED, seen.add("https://example.com/page/" + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(UrlSeenSet.Result.SEEN, seen.add("https://example.com/page/" + i));
+        }
+        assertEquals(10_000, seen.size());
+        assertTrue(seen.memoryBytes() <= 1 << 20);
+        assertFalse(seen.isBloomFilter());
+    }
+
+    @Test
+    void stopsAcceptingWhenFullWithoutBloomFallback() {
+        UrlSeenSet seen = new UrlSeenSet(MIN_BYTES, false);
+        for (int i = 0; i < 512; i++) {
+            assertEquals(UrlSeenSet.Result.ADDED, seen.add("https://example.com/" + i));
+        }
+
+        assertEquals(UrlSeenSet.Result.FULL, seen.add("https://example.com/new"));
+        assertEquals(UrlSeenSet.Result.SEEN, seen.add("https://example.com/7"));
+        assertEquals(MIN_BYTES, seen.memoryBytes());
+    }
+
+    @Test
+    void switchesToBloomFilterKeepingKnownAddresses() {
+        UrlSeenSet seen = new UrlSeenSet(MIN_BYTES, true);
+        for (int i = 0; i < 600; i++) {
+            assertNotEquals(UrlSeenSet.Result.FULL, seen.add("https://example.com/" + i));
+        }
+
+        assertTrue(seen.isBloomFilter());
+        assertEquals(MIN_BYTES, seen.memoryBytes());
+        for (int i = 0; i < 600; i++) {
+            assertEquals(UrlSeenSet.Result.SEEN, seen.add("https://example.com/" + i));
+        }
+    }
+
+    @Test
+    void containsOnlyAddedAddresses() {
+        UrlSeenSet seen = new UrlSeenSet(MIN_BYTES, true);
+        seen.add("https://example.com/a");
+
+        assertTrue(seen.contains("https://example.com/a"));
+        assertFalse(seen.contains("https://example.com/b"));
+
+        for (int i = 0; i < 600; i++) {
+            seen.add("https://example.com/" + i);
+        }
+        assertTrue(seen.isBloomFilter());
+        assertTrue(seen.contains("https://example.com/a"));
+        assertTrue(seen.contains("https://example.com/599"));
+    }
+
+    @Test
+    void fingerprintIsNeverZero() {
+        assertNotEquals(0, UrlSeenSet.fingerprint(""));
+        assertNotEquals(UrlSeenSet.fingerprint("https://example.com/a"), UrlSeenSet.fingerprint("https://example.com/b"));
+    }
+}
@@ -0,0 +1,53 @@
+package searchengine.services.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LemmaPositionsTest {
+
+    @Test
+    void decodesOccurrencesOfWantedLemmasOnly() {
+        LemmaPositions positions = new LemmaPositions();
+        positions.add("поиск", 0, 5);
+        positions.add("сайт", 9, 14);
+        positions.add("поиск", 20, 26);
+        positions.add("java", 300, 304);
+
+        LemmaPositions decoded = LemmaPositions.decode(positions.encode(), Set.of("поиск", "java"));
+
+        assertEquals(List.of("java 300-304", "поиск 0-5", "поиск 20-26"), occurrences(decoded));
+    }
+
+    @Test
+    void encodesLargeOffsetsAsVarInts() {
+        LemmaPositions positions = new LemmaPositions();
+        for (int i = 0; i < 100; i++) {
+            positions.add("слово", i * 100_000, i * 100_000 + 5);
+        }
+
+        LemmaPositions decoded = LemmaPositions.decode(positions.encode(), Set.of("слово"));
+
+        assertEquals(occurrences(positions), occurrences(decoded));
+    }
+
+    @Test
+    void emptyPositionsRoundTrip() {
+        LemmaPositions empty = new LemmaPositions();
+
+        assertTrue(LemmaPositions.decode(empty.encode(), Set.of("поиск")).isEmpty());
+        assertTrue(LemmaPositions.decode(new byte[0], Set.of("поиск")).isEmpty());
+    }
+
+    private static List<String> occurrences(LemmaPositions positions) {
+        List<String> result = new ArrayList<>();
+        positions.forEach((lemma, start, end) -> result.add(lemma + " " + start + "-" + end));
+        result.sort(null);
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+package searchengine.services.impl;
+
+import org.junit.jupiter.api.Test;
+import searchengine.repository.PageBatchRepository;
+import searchengine.services.crawler.FetchedPage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RefreshOutcomeTest {
+
+    private static final String HTML = "<html><body>дом</body></html>";
+
+    @Test
+    void indexesUnknownPage() {
+        assertEquals(RefreshOutcome.ADDED, RefreshOutcome.of(null, page(200, HTML)));
+    }
+
+    @Test
+    void keepsPageConfirmedUnchanged() {
+        PageBatchRepository.PageState known = known(200, page(200, HTML).getContentHash());
+
+        assertEquals(RefreshOutcome.NOT_MODIFIED, RefreshOutcome.of(known, page(304, "")));
+        assertEquals(RefreshOutcome.SAME_CONTENT, RefreshOutcome.of(known, page(200, HTML)));
+    }
+
+    @Test
+    void replacesPageWithNewContentOrCode() {
+        long hash = page(200, HTML).getContentHash();
+
+        assertEquals(RefreshOutcome.CHANGED,
+                RefreshOutcome.of(known(200, hash), page(200, "<html><body>сад</body></html>")));
+        assertEquals(RefreshOutcome.CHANGED, RefreshOutcome.of(known(200, null), page(200, HTML)));
+        assertEquals(RefreshOutcome.CHANGED, RefreshOutcome.of(known(203, hash), page(200, HTML)));
+    }
+
+    @Test
+    void replacesTruncatedPageEvenWithSameCode() {
+        FetchedPage truncated = new FetchedPage("https://example.com/a", 200, HTML, null, null, null, true);
+
+        assertEquals(RefreshOutcome.CHANGED, RefreshOutcome.of(known(200, null), truncated));
+        assertEquals(RefreshOutcome.CHANGED, RefreshOutcome.of(known(200, 1L), truncated));
+    }
+
+    @Test
+    void removesGonePagesAndKeepsPagesOnOtherErrors() {
+        PageBatchRepository.PageState known = known(200, 1L);
+
+        assertEquals(RefreshOutcome.GONE, RefreshOutcome.of(known, page(404, "")));
+        assertEquals(RefreshOutcome.GONE, RefreshOutcome.of(known, page(410, "")));
+        assertEquals(RefreshOutcome.FAILED, RefreshOutcome.of(known, page(500, "")));
+        assertEquals(RefreshOutcome.FAILED, RefreshOutcome.of(known, page(429, "")));
+    }
+
+    private static PageBatchRepository.PageState known(int code, Long contentHash) {
+        return new PageBatchRepository.PageState(1, "/a", code, null, null, contentHash);
+    }
+
+    private static FetchedPage page(int statusCode, String html) {
+        return new FetchedPage("https://example.com/a", statusCode, html);
+    }
+}
@@ -0,0 +1,75 @@
+package searchengine.services.impl;
+
+import org.junit.jupiter.api.Test;
+import searchengine.config.SearchCacheSettings;
+import searchengine.model.SiteEntity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SearchResultCacheTest {
+
+    private final SearchResultCache cache = new SearchResultCache(new SearchCacheSettings());
+    private final SiteEntity first = site(1);
+    private final SiteEntity second = site(2);
+
+    @Test
+    void keyIgnoresLemmaOrder() {
+        assertEquals(cache.key(Set.of("дом", "сад"), null, List.of(first)),
+                cache.key(Set.of("сад", "дом"), null, List.of(first)));
+    }
+
+    @Test
+    void siteChangeDropsEntriesCoveringThatSiteOnly() {
+        SearchResultCache.Key both = cache.key(Set.of("дом"), null, List.of(first, second));
+        SearchResultCache.Key onlySecond = cache.key(Set.of("дом"), "https://second.example", List.of(second));
+        cache.put(both, ranked());
+        cache.put(onlySecond, ranked());
+
+        cache.siteChanged(1);
+
+        assertNull(cache.get(both));
+        assertNotNull(cache.get(onlySecond));
+    }
+
+    @Test
+    void keyTakenBeforeChangeIsStale() {
+        SearchResultCache.Key before = cache.key(Set.of("дом"), null, List.of(first));
+
+        cache.siteChanged(1);
+        // результат, посчитанный во время изменения, кладётся под старым ключом и не читается
+        cache.put(before, ranked());
+
+        SearchResultCache.Key after = cache.key(Set.of("дом"), null, List.of(first));
+        assertNotEquals(before, after);
+        assertNull(cache.get(after));
+    }
+
+    @Test
+    void disabledCacheStoresNothing() {
+        SearchCacheSettings settings = new SearchCacheSettings();
+        settings.setEnabled(false);
+        SearchResultCache disabled = new SearchResultCache(settings);
+        SearchResultCache.Key key = disabled.key(Set.of("дом"), null, List.of(first));
+
+        disabled.put(key, ranked());
+
+        assertNull(disabled.get(key));
+    }
+
+    private static SearchResultCache.RankedPages ranked() {
+        return new SearchResultCache.RankedPages(List.of(Map.entry(10, 2f)), 1);
+    }
+
+    private static SiteEntity site(int id) {
+        SiteEntity site = new SiteEntity();
+        site.setId(id);
+        return site;
+    }
+}
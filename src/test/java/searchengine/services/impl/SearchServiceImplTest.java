@@ -0,0 +1,95 @@
+package searchengine.services.impl;
+
+import org.junit.jupiter.api.Test;
+import searchengine.dto.search.SearchResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class SearchServiceImplTest {
+
+    @Test
+    void selectsWindowInRankingOrder() {
+        Map<Integer, Float> relevance = Map.of(1, 2f, 2, 5f, 3, 2f, 4, 9f, 5, 1f);
+
+        assertEquals(List.of(4, 2, 1, 3, 5), pageIds(SearchServiceImpl.selectWindow(relevance, 0, 10)));
+        assertEquals(List.of(2, 1), pageIds(SearchServiceImpl.selectWindow(relevance, 1, 2)));
+        assertEquals(List.of(3, 5), pageIds(SearchServiceImpl.selectWindow(relevance, 3, 10)));
+    }
+
+    @Test
+    void returnsEmptyWindowOutsideResults() {
+        Map<Integer, Float> relevance = Map.of(1, 2f, 2, 5f);
+
+        assertTrue(SearchServiceImpl.selectWindow(relevance, 0, 0).isEmpty());
+        assertTrue(SearchServiceImpl.selectWindow(relevance, 2, 10).isEmpty());
+        assertTrue(SearchServiceImpl.selectWindow(relevance, Integer.MAX_VALUE, Integer.MAX_VALUE).isEmpty());
+        assertEquals(List.of(1), pageIds(SearchServiceImpl.selectWindow(relevance, 1, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    void matchesFullSortOnRandomResults() {
+        Random random = new Random(11);
+        Map<Integer, Float> relevance = new HashMap<>();
+        for (int pageId = 1; pageId <= 1000; pageId++) {
+            relevance.put(pageId, (float) random.nextInt(50));
+        }
+        List<Map.Entry<Integer, Float>> sorted = new ArrayList<>(relevance.entrySet());
+        sorted.sort(Map.Entry.<Integer, Float>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+
+        for (int offset : new int[]{0, 17, 990}) {
+            assertEquals(pageIds(sorted.subList(offset, Math.min(offset + 20, sorted.size()))),
+                    pageIds(SearchServiceImpl.selectWindow(relevance, offset, 20)));
+        }
+    }
+
+    @Test
+    void cachedPagesCoverOnlyStoredPartOfResults() {
+        SearchResultCache.RankedPages ranked = new SearchResultCache.RankedPages(
+                SearchServiceImpl.selectWindow(Map.of(1, 2f, 2, 5f, 3, 4f, 4, 1f), 0, 3), 4);
+
+        assertEquals(4, ranked.size());
+        assertEquals(5f, ranked.maxRelevance());
+        assertTrue(ranked.covers(0, 3));
+        assertTrue(ranked.covers(1, 2));
+        assertFalse(ranked.covers(2, 2));
+        assertFalse(ranked.covers(Integer.MAX_VALUE, Integer.MAX_VALUE));
+        assertEquals(List.of(3, 1), pageIds(ranked.window(1, 2)));
+
+        SearchResultCache.RankedPages complete = new SearchResultCache.RankedPages(
+                SearchServiceImpl.selectWindow(Map.of(1, 2f), 0, 3), 1);
+        assertTrue(complete.covers(5, 10));
+        assertTrue(complete.window(5, 10).isEmpty());
+    }
+
+    @Test
+    void rejectsNegativePaging() {
+        LemmaService lemmaService = mock(LemmaService.class);
+        SearchServiceImpl service = new SearchServiceImpl(null, null, null, null, null, lemmaService, null, null);
+
+        SearchResponse negativeOffset = service.search("дом", null, -1, 20);
+        SearchResponse negativeLimit = service.search("дом", null, 0, -5);
+
+        assertFalse(negativeOffset.isResult());
+        assertFalse(negativeLimit.isResult());
+        verifyNoInteractions(lemmaService);
+    }
+
+    private static List<Integer> pageIds(List<Map.Entry<Integer, Float>> window) {
+        List<Integer> pageIds = new ArrayList<>();
+        for (Map.Entry<Integer, Float> entry : window) {
+            pageIds.add(entry.getKey());
+        }
+        return pageIds;
+    }
+}
@@ -0,0 +1,54 @@
+package searchengine.services.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WordTokenizerTest {
+
+    @Test
+    void matchesRegexSplitting() {
+        String text = "Привет, МИР! Hello-world 42 раза: ёлка, Ёж и  xy\tпоиск.Java";
+
+        List<String> words = new ArrayList<>();
+        WordTokenizer.tokenize(text, (word, script) -> words.add(word));
+
+        List<String> expected = Arrays.stream(text.toLowerCase().replaceAll("[^а-яёa-z\\s]", " ").trim().split("\\s+"))
+                .filter(word -> word.length() >= WordTokenizer.MIN_WORD_LENGTH)
+                .collect(Collectors.toList());
+        assertEquals(expected, words);
+    }
+
+    @Test
+    void detectsScriptOfWord() {
+        List<WordTokenizer.Script> scripts = new ArrayList<>();
+        WordTokenizer.tokenize("дом house сomputer", (word, script) -> scripts.add(script));
+
+        // в последнем слове первая буква кириллическая
+        assertEquals(List.of(WordTokenizer.Script.CYRILLIC, WordTokenizer.Script.LATIN,
+                WordTokenizer.Script.CYRILLIC), scripts);
+    }
+
+    @Test
+    void reportsWordBoundsInSourceText() {
+        String text = "  Поиск по САЙТУ.";
+        List<String> found = new ArrayList<>();
+        WordTokenizer.tokenize(text, (word, script, start, end) -> found.add(word + "=" + text.substring(start, end)));
+
+        assertEquals(List.of("поиск=Поиск", "сайту=САЙТУ"), found);
+    }
+
+    @Test
+    void skipsShortWordsAndEmptyText() {
+        List<String> words = new ArrayList<>();
+        WordTokenizer.tokenize("", (word, script) -> words.add(word));
+        WordTokenizer.tokenize("я и ты, ok", (word, script) -> words.add(word));
+
+        assertEquals(List.of(), words);
+    }
+}
@@ -0,0 +1,101 @@
+package searchengine.services.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.SearchSettings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexSegmentTest {
+
+    @TempDir
+    Path directory;
+
+    private SegmentStore store;
+
+    @BeforeEach
+    void setUp() {
+        SearchSettings settings = new SearchSettings();
+        settings.setSegmentsDir(directory.toString());
+        store = new SegmentStore(settings);
+    }
+
+    @Test
+    void readsBackHeaderTermsAndPostings() throws IOException {
+        SegmentWriter writer = new SegmentWriter(4);
+        writer.addTerm("сад", postings(1, 300, 2));
+        writer.addTerm("дом", postings(2, 300, 3));
+        writer.addTerm("пусто", new PostingList(0));
+        for (int pageId = 1; pageId <= 300; pageId++) {
+            writer.addPage(pageId, "/p" + pageId);
+        }
+
+        IndexSegment segment = store.write(writer);
+
+        assertEquals(4, segment.getSiteId());
+        assertEquals(300, segment.getPageCount());
+        assertEquals(300, segment.getMaxPageId());
+        assertEquals(2, segment.getLemmaCount());
+        assertEquals(List.of("дом", "сад"), segment.lemmas());
+        assertEquals(read(postings(1, 300, 2).snapshot()), read(segment.postings("сад")));
+        assertEquals(read(postings(2, 300, 3).snapshot()), read(segment.postings("дом")));
+        assertNull(segment.postings("пусто"));
+        assertNull(segment.postings("лес"));
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSegments() throws IOException {
+        Path file = directory.resolve("site-1-1.seg");
+        Files.write(file, new byte[IndexSegment.HEADER_SIZE]);
+
+        assertThrows(IOException.class, () -> IndexSegment.open(file));
+    }
+
+    @Test
+    void opensNewestSegmentOfEachSiteAndDeletesTheRest() throws IOException, InterruptedException {
+        IndexSegment old = store.write(new SegmentWriter(1));
+        Thread.sleep(5);
+        IndexSegment current = store.write(new SegmentWriter(1));
+        IndexSegment other = store.write(new SegmentWriter(2));
+        Path broken = directory.resolve("site-3-1.seg");
+        Files.write(broken, new byte[]{1, 2, 3});
+
+        Map<Integer, IndexSegment> segments = store.openAll();
+
+        assertEquals(2, segments.size());
+        assertEquals(current.getFile(), segments.get(1).getFile());
+        assertEquals(other.getFile(), segments.get(2).getFile());
+        assertFalse(Files.exists(broken));
+        assertTrue(Files.exists(current.getFile()));
+        assertFalse(Files.exists(old.getFile()));
+    }
+
+    private static PostingList postings(int from, int to, int step) {
+        PostingList postings = new PostingList(0);
+        for (int pageId = from; pageId <= to; pageId += step) {
+            postings.add(pageId, pageId % 5 + 1);
+        }
+        return postings;
+    }
+
+    private static List<Long> read(PostingList.Snapshot snapshot) {
+        List<Long> entries = new ArrayList<>();
+        PostingList.Cursor cursor = snapshot.cursor();
+        while (cursor.next()) {
+            entries.add(((long) cursor.pageId() << 32) | cursor.rank());
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,160 @@
+package searchengine.services.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SitesList;
+import searchengine.repository.IndexBatchRepository;
+import searchengine.repository.PageBatchRepository;
+import searchengine.services.impl.SearchResultCache;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IndexWriterTest {
+
+    private static final int SITE = 7;
+
+    private final IndexBatchRepository indexBatchRepository = mock(IndexBatchRepository.class);
+    private final PageBatchRepository pageBatchRepository = mock(PageBatchRepository.class);
+    private final InvertedIndex invertedIndex = mock(InvertedIndex.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final SearchResultCache searchResultCache = mock(SearchResultCache.class);
+    private final LemmaDictionary lemmaDictionary = new LemmaDictionary(indexBatchRepository);
+    private IndexWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        SitesList sitesList = new SitesList();
+        sitesList.setFlushRows(3);
+        writer = new IndexWriter(indexBatchRepository, pageBatchRepository, lemmaDictionary, invertedIndex,
+                searchResultCache, transactionTemplate, sitesList);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(indexBatchRepository.findLemmaIds(eq(SITE), anyCollection()))
+                .thenReturn(Map.of("дом", 1, "сад", 2, "лес", 3));
+    }
+
+    @Test
+    void buffersPagesUntilRowThreshold() {
+        writer.write(SITE, 10, Map.of("дом", 1));
+        verify(indexBatchRepository, never()).insertIndexes(any());
+
+        writer.write(SITE, 11, Map.of("сад", 2, "лес", 1));
+
+        verify(indexBatchRepository).upsertLemmas(SITE, Map.of("дом", 1, "сад", 1, "лес", 1));
+        verify(indexBatchRepository).insertIndexes(any());
+        verify(invertedIndex).addPage(eq(SITE), eq(10), anyMap(), anyMap());
+        verify(invertedIndex).addPage(eq(SITE), eq(11), anyMap(), anyMap());
+    }
+
+    @Test
+    void retriesBatchAfterDeadlock() {
+        doThrow(new CannotAcquireLockException("Deadlock found when trying to get lock"))
+                .doNothing()
+                .when(indexBatchRepository).insertIndexes(any());
+        writer.write(SITE, 10, Map.of("дом", 1));
+
+        writer.flush(SITE);
+
+        verify(indexBatchRepository, times(2)).insertIndexes(any());
+        verify(invertedIndex).addPage(eq(SITE), eq(10), anyMap(), anyMap());
+        verify(pageBatchRepository, never()).deletePages(any());
+    }
+
+    @Test
+    void deletesEveryPageOfFailedBatch() {
+        doThrow(new DataAccessResourceFailureException("Communications link failure"))
+                .when(indexBatchRepository).insertIndexes(any());
+        writer.write(SITE, 10, Map.of("дом", 1));
+        writer.write(SITE, 11, Map.of("сад", 1));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> writer.write(SITE, 12, Map.of("лес", 1)));
+
+        verify(indexBatchRepository, times(1)).insertIndexes(any());
+        verify(pageBatchRepository).deletePages(List.of(10, 11, 12));
+        verify(invertedIndex).removePage(SITE, 10);
+        verify(invertedIndex).removePage(SITE, 11);
+        verify(invertedIndex).removePage(SITE, 12);
+        verify(invertedIndex, never()).addPage(anyInt(), anyInt(), anyMap(), anyMap());
+    }
+
+    @Test
+    void deletesPagesWhenDeadlockOutlastsRetries() {
+        doThrow(new CannotAcquireLockException("Deadlock found when trying to get lock"))
+                .when(indexBatchRepository).insertIndexes(any());
+        doNothing().when(pageBatchRepository).deletePages(any());
+        writer.write(SITE, 10, Map.of("дом", 1));
+
+        assertThrows(CannotAcquireLockException.class, () -> writer.flush(SITE));
+
+        verify(indexBatchRepository, times(3)).insertIndexes(any());
+        verify(pageBatchRepository).deletePages(List.of(10));
+    }
+
+    @Test
+    void removesReplacedPageInTransactionOfNewIndex() {
+        writer.replace(SITE, 20, Map.of("дом", 1), 10, "/a");
+
+        writer.flush(SITE);
+
+        InOrder order = inOrder(indexBatchRepository, pageBatchRepository, invertedIndex);
+        order.verify(indexBatchRepository).insertIndexes(any());
+        order.verify(pageBatchRepository).replacePages(argThat(replacements -> replacements.size() == 1
+                && replacements.get(0).getPageId() == 20
+                && replacements.get(0).getReplacedPageId() == 10
+                && replacements.get(0).getPath().equals("/a")));
+        order.verify(invertedIndex).addPage(eq(SITE), eq(20), anyMap(), anyMap());
+        order.verify(invertedIndex).removePage(SITE, 10);
+    }
+
+    @Test
+    void keepsReplacedPageWhenBatchFails() {
+        doThrow(new DataAccessResourceFailureException("Communications link failure"))
+                .when(indexBatchRepository).insertIndexes(any());
+        writer.replace(SITE, 20, Map.of("дом", 1), 10, "/a");
+
+        assertThrows(DataAccessResourceFailureException.class, () -> writer.flush(SITE));
+
+        verify(pageBatchRepository, never()).replacePages(any());
+        verify(pageBatchRepository).deletePages(List.of(20));
+        verify(invertedIndex, never()).removePage(SITE, 10);
+    }
+
+    @Test
+    void invalidatesSearchCacheOnlyForVisibleGenerations() {
+        writer.write(SITE, 10, Map.of("дом", 1));
+        writer.flush(SITE);
+        verify(searchResultCache).siteChanged(SITE);
+
+        writer.startGeneration(SITE + 1);
+        writer.write(SITE + 1, 20, Map.of("дом", 1));
+        writer.flush(SITE + 1);
+        verify(searchResultCache, never()).siteChanged(SITE + 1);
+
+        writer.finishGeneration(SITE + 1);
+        writer.write(SITE + 1, 21, Map.of("дом", 1));
+        writer.flush(SITE + 1);
+        verify(searchResultCache).siteChanged(SITE + 1);
+    }
+}
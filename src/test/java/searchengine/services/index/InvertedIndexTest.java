@@ -0,0 +1,203 @@
+package searchengine.services.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.SearchSettings;
+import searchengine.repository.IndexBatchRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class InvertedIndexTest {
+
+    private static final int SITE = 5;
+    private static final Map<String, Integer> LEMMA_IDS = Map.of("дом", 1, "сад", 2, "лес", 3);
+
+    @TempDir
+    Path directory;
+
+    private final IndexBatchRepository indexBatchRepository = mock(IndexBatchRepository.class);
+    private InvertedIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new InvertedIndex(indexBatchRepository, new SegmentStore(settings("")), settings(""));
+    }
+
+    @Test
+    void findsPagesWithAllLemmasAndSumsRanks() {
+        addPage(1, Map.of("дом", 2, "сад", 1));
+        addPage(2, Map.of("дом", 1));
+        addPage(3, Map.of("дом", 3, "сад", 4));
+        addPages(4, 10, Map.of("лес", 1));
+
+        assertEquals(Map.of(1, 3f, 3, 7f), index.search(SITE, Set.of("дом", "сад")));
+    }
+
+    @Test
+    void ignoresUnknownLemmas() {
+        addPage(1, Map.of("дом", 1));
+        addPages(2, 10, Map.of("лес", 1));
+
+        assertEquals(Map.of(1, 1f), index.search(SITE, Set.of("дом", "кот")));
+        assertTrue(index.search(SITE, Set.of("кот")).isEmpty());
+        assertTrue(index.search(SITE + 1, Set.of("дом")).isEmpty());
+    }
+
+    @Test
+    void dropsLemmasFoundOnMostPages() {
+        addPages(1, 8, Map.of("дом", 1));
+        addPage(9, Map.of("дом", 1, "сад", 2));
+        addPage(10, Map.of("сад", 2));
+
+        // дом на 9 страницах из 10 - слишком частая лемма, ищется только сад
+        assertEquals(Map.of(9, 2f, 10, 2f), index.search(SITE, Set.of("дом", "сад")));
+    }
+
+    @Test
+    void removedPagesLeaveResultsAndDocumentFrequency() {
+        addPages(1, 8, Map.of("дом", 1));
+        addPage(9, Map.of("сад", 1));
+        addPage(10, Map.of("сад", 1));
+        assertTrue(index.search(SITE, Set.of("дом")).isEmpty());
+
+        index.removePage(SITE, 1);
+        index.removePage(SITE, 2);
+
+        // 6 живых страниц из 8 - меньше 80%, лемма снова участвует в поиске
+        Map<Integer, Float> found = index.search(SITE, Set.of("дом"));
+        assertEquals(Set.of(3, 4, 5, 6, 7, 8), found.keySet());
+    }
+
+    @Test
+    void droppedSiteIsNotSearched() {
+        addPage(1, Map.of("дом", 1));
+        addPages(2, 10, Map.of("лес", 1));
+
+        index.dropSite(SITE);
+
+        assertTrue(index.search(SITE, Set.of("дом")).isEmpty());
+        assertEquals(0, index.memoryBytes());
+    }
+
+    @Test
+    void loadsMatchingSegmentAndRebuildsStaleOneFromDatabase() throws Exception {
+        SearchSettings settings = settings(directory.toString());
+        SegmentStore store = new SegmentStore(settings);
+        SegmentWriter matching = new SegmentWriter(SITE);
+        matching.addTerm("дом", postingsOf(1, 2));
+        for (int pageId = 1; pageId <= 4; pageId++) {
+            matching.addPage(pageId, "/" + pageId);
+        }
+        store.write(matching);
+        SegmentWriter stale = new SegmentWriter(SITE + 1);
+        stale.addTerm("сад", postingsOf(11));
+        stale.addPage(11, "/11");
+        Path staleFile = store.write(stale).getFile();
+
+        // в БД у второго сайта уже три страницы, сегмент устарел
+        doAnswer(invocation -> {
+            IndexBatchRepository.PageCountHandler handler = invocation.getArgument(0);
+            handler.accept(SITE, 4, 4);
+            handler.accept(SITE + 1, 3, 13);
+            return null;
+        }).when(indexBatchRepository).countPagesBySite(any());
+        doAnswer(invocation -> {
+            invocation.<IndexBatchRepository.LemmaRowHandler>getArgument(0).accept(20, SITE + 1, "сад");
+            return null;
+        }).when(indexBatchRepository).streamLemmas(any());
+        doAnswer(invocation -> {
+            IndexBatchRepository.IndexRowHandler handler = invocation.getArgument(0);
+            handler.accept(20, 11, 1);
+            handler.accept(20, 12, 3);
+            return null;
+        }).when(indexBatchRepository).streamIndex(any());
+        doAnswer(invocation -> {
+            IndexBatchRepository.PageRowHandler handler = invocation.getArgument(1);
+            handler.accept(11, "/11");
+            handler.accept(12, "/12");
+            handler.accept(13, "/13");
+            return null;
+        }).when(indexBatchRepository).streamPages(eq(SITE + 1), any());
+
+        index = new InvertedIndex(indexBatchRepository, store, settings);
+        load();
+
+        assertEquals(Map.of(1, 1f, 2, 1f), index.search(SITE, Set.of("дом")));
+        assertEquals(Map.of(11, 1f, 12, 3f), index.search(SITE + 1, Set.of("сад")));
+        assertFalse(Files.exists(staleFile));
+    }
+
+    @Test
+    void mergesHeapPagesOlderThanSegment() throws Exception {
+        SearchSettings settings = settings(directory.toString());
+        // страница 3 записана в БД до сегмента, а её строки индекса - после
+        doAnswer(invocation -> {
+            IndexBatchRepository.PageRowHandler handler = invocation.getArgument(1);
+            for (int pageId = 1; pageId <= 10; pageId++) {
+                handler.accept(pageId, "/" + pageId);
+            }
+            return null;
+        }).when(indexBatchRepository).streamPages(eq(SITE), any());
+        index = new InvertedIndex(indexBatchRepository, new SegmentStore(settings), settings);
+        load();
+
+        addPage(1, Map.of("дом", 1));
+        addPage(2, Map.of("дом", 1));
+        index.pageSaved(SITE);
+        addPage(4, Map.of("дом", 1));
+        addPage(5, Map.of("дом", 1, "сад", 2));
+        addPages(6, 10, Map.of("лес", 1));
+        index.persistSite(SITE);
+
+        index.addPage(SITE, 3, Map.of("дом", 2, "сад", 1), LEMMA_IDS);
+
+        assertEquals(Map.of(3, 3f, 5, 3f), index.search(SITE, Set.of("дом", "сад")));
+        assertEquals(Set.of(1, 2, 3, 4, 5), index.search(SITE, Set.of("дом")).keySet());
+    }
+
+    private void load() throws InterruptedException {
+        index.loadAsync();
+        for (int i = 0; i < 500 && !index.isReady(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(index.isReady());
+    }
+
+    private static SearchSettings settings(String segmentsDir) {
+        SearchSettings settings = new SearchSettings();
+        settings.setInMemoryIndex(true);
+        settings.setSegmentsDir(segmentsDir);
+        return settings;
+    }
+
+    private static PostingList postingsOf(int... pageIds) {
+        PostingList postings = new PostingList(0);
+        for (int pageId : pageIds) {
+            postings.add(pageId, 1);
+        }
+        return postings;
+    }
+
+    private void addPages(int from, int to, Map<String, Integer> lemmas) {
+        for (int pageId = from; pageId <= to; pageId++) {
+            addPage(pageId, lemmas);
+        }
+    }
+
+    private void addPage(int pageId, Map<String, Integer> lemmas) {
+        index.pageSaved(SITE);
+        index.addPage(SITE, pageId, lemmas, LEMMA_IDS);
+    }
+}
@@ -0,0 +1,61 @@
+package searchengine.services.index;
+
+import org.junit.jupiter.api.Test;
+import searchengine.repository.IndexBatchRepository;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LemmaDictionaryTest {
+
+    private final IndexBatchRepository repository = mock(IndexBatchRepository.class);
+    private final LemmaDictionary dictionary = new LemmaDictionary(repository);
+
+    @Test
+    void loadsSiteLemmasOnOpen() {
+        when(repository.findAllLemmaIds(1)).thenReturn(Map.of("дом", 10, "сад", 11));
+
+        dictionary.open(1);
+
+        assertEquals(Map.of("дом", 10), dictionary.lookup(1, List.of("дом", "лес")));
+        assertEquals(2, dictionary.size(1));
+    }
+
+    @Test
+    void keepsFirstIdOfLemmaAndCountsMemory() {
+        when(repository.findAllLemmaIds(1)).thenReturn(Map.of());
+        dictionary.open(1);
+
+        dictionary.putAll(1, Map.of("лес", 12));
+        long footprint = dictionary.memoryFootprint(1);
+        dictionary.putAll(1, Map.of("лес", 99));
+
+        assertEquals(Map.of("лес", 12), dictionary.lookup(1, List.of("лес")));
+        assertEquals(footprint, dictionary.memoryFootprint(1));
+        assertTrue(footprint > 0);
+    }
+
+    @Test
+    void ignoresSitesWithoutOpenDictionary() {
+        dictionary.putAll(2, Map.of("дом", 10));
+
+        assertTrue(dictionary.lookup(2, List.of("дом")).isEmpty());
+        assertEquals(0, dictionary.size(2));
+    }
+
+    @Test
+    void forgetsSiteOnEvict() {
+        when(repository.findAllLemmaIds(1)).thenReturn(Map.of("дом", 10));
+        dictionary.open(1);
+
+        dictionary.evict(1);
+
+        assertTrue(dictionary.lookup(1, List.of("дом")).isEmpty());
+        assertEquals(0, dictionary.memoryFootprint(1));
+    }
+}
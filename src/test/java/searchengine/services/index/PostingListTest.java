@@ -0,0 +1,140 @@
+package searchengine.services.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostingListTest {
+
+    @Test
+    void varIntRoundTrip() {
+        int[] values = {0, 1, 127, 128, 16_383, 16_384, 1 << 28, Integer.MAX_VALUE};
+        byte[] buffer = new byte[values.length * 5];
+        int length = 0;
+        for (int value : values) {
+            length = PostingsCodec.writeVarInt(buffer, length, value);
+        }
+        assertEquals(1 + 1 + 1 + 2 + 2 + 3 + 5 + 5, length);
+
+        int[] position = new int[1];
+        for (int value : values) {
+            assertEquals(value, PostingsCodec.readVarInt(ByteBuffer.wrap(buffer), position));
+        }
+        assertEquals(length, position[0]);
+    }
+
+    @Test
+    void readsBackPagesAcrossBlocksAndTail() {
+        PostingList postings = listOf(1000);
+
+        assertEquals(1000, postings.size());
+        assertEquals(expected(1000), read(postings.snapshot()));
+    }
+
+    @Test
+    void advanceSkipsToTargetOrNextPage() {
+        PostingList.Cursor cursor = listOf(1000).snapshot().cursor();
+
+        assertTrue(cursor.advance(501));
+        assertEquals(501, cursor.pageId());
+        assertEquals(250 % 7 + 1, cursor.rank());
+        assertTrue(cursor.advance(1500));
+        assertEquals(1501, cursor.pageId());
+        assertTrue(cursor.advance(1500));
+        assertEquals(1501, cursor.pageId());
+        assertFalse(cursor.advance(3000));
+    }
+
+    @Test
+    void insertsOutOfOrderPageAndIgnoresRepeat() {
+        PostingList postings = new PostingList(1);
+        postings.add(10, 1);
+        postings.add(30, 3);
+        postings.add(20, 2);
+        postings.add(20, 5);
+
+        assertEquals(List.of(10, 1, 20, 2, 30, 3), read(postings.snapshot()));
+    }
+
+    @Test
+    void sealSortsBulkLoadAndDropsDuplicates() {
+        PostingList postings = new PostingList(1);
+        postings.unseal();
+        for (int i = 299; i >= 0; i--) {
+            postings.add(i * 2 + 1, i % 7 + 1);
+        }
+        postings.add(1, 1);
+        postings.seal();
+
+        assertEquals(300, postings.size());
+        assertEquals(expected(300), read(postings.snapshot()));
+    }
+
+    @Test
+    void writtenListReadsBackFromBuffer() throws IOException {
+        PostingList postings = listOf(300);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[7]);
+        postings.writeTo(new DataOutputStream(bytes));
+
+        PostingList.Snapshot snapshot = PostingList.read(ByteBuffer.wrap(bytes.toByteArray()), 7);
+
+        assertEquals(300, snapshot.size());
+        assertEquals(expected(300), read(snapshot));
+    }
+
+    @Test
+    void chainedSnapshotsReadAsOneList() {
+        PostingList first = listOf(200);
+        PostingList second = new PostingList(1);
+        second.add(5000, 2);
+        second.add(5001, 3);
+
+        PostingList.Snapshot chained = first.snapshot().then(second.snapshot());
+        List<Integer> expected = expected(200);
+        expected.addAll(List.of(5000, 2, 5001, 3));
+
+        assertEquals(202, chained.size());
+        assertEquals(expected, read(chained));
+        PostingList.Cursor cursor = chained.cursor();
+        assertTrue(cursor.advance(4000));
+        assertEquals(5000, cursor.pageId());
+    }
+
+    /** Страницы 1, 3, 5, ... с рангами от 1 до 7. */
+    private static PostingList listOf(int count) {
+        PostingList postings = new PostingList(1);
+        for (int i = 0; i < count; i++) {
+            postings.add(i * 2 + 1, i % 7 + 1);
+        }
+        return postings;
+    }
+
+    private static List<Integer> expected(int count) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(i * 2 + 1);
+            values.add(i % 7 + 1);
+        }
+        return values;
+    }
+
+    private static List<Integer> read(PostingList.Snapshot snapshot) {
+        List<Integer> values = new ArrayList<>();
+        PostingList.Cursor cursor = snapshot.cursor();
+        while (cursor.next()) {
+            values.add(cursor.pageId());
+            values.add(cursor.rank());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,137 @@
+package searchengine.services.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SitesList;
+import searchengine.model.PageEntity;
+import searchengine.model.SiteEntity;
+import searchengine.repository.PageBatchRepository;
+import searchengine.repository.PageContentRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.services.crawler.FetchedPage;
+import searchengine.services.impl.LemmaService;
+import searchengine.services.index.IndexWriter;
+import searchengine.services.index.InvertedIndex;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IndexingPipelineTest {
+
+    private final PageRepository pageRepository = mock(PageRepository.class);
+    private final PageContentRepository pageContentRepository = mock(PageContentRepository.class);
+    private final SiteRepository siteRepository = mock(SiteRepository.class);
+    private final LemmaService lemmaService = mock(LemmaService.class);
+    private final IndexWriter indexWriter = mock(IndexWriter.class);
+    private final InvertedIndex invertedIndex = mock(InvertedIndex.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private IndexingPipeline pipeline;
+    private SiteEntity site;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new IndexingPipeline(pageRepository, pageContentRepository, siteRepository, lemmaService,
+                indexWriter, invertedIndex, transactionTemplate, new SitesList());
+        site = new SiteEntity();
+        site.setId(3);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(lemmaService.collectLemmas(anyString(), any())).thenReturn(Map.of("дом", 2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void savesPageAndContentInOneTransactionBeforeIndexing() {
+        when(pageRepository.save(any())).thenAnswer(invocation -> {
+            PageEntity page = invocation.getArgument(0);
+            page.setId(42);
+            return page;
+        });
+
+        pipeline.process(site, new FetchedPage("https://example.com/a", 200,
+                "<html><head><title>Дом</title></head><body>дом дом</body></html>"), "/a");
+
+        InOrder order = inOrder(transactionTemplate, pageRepository, pageContentRepository, indexWriter);
+        order.verify(transactionTemplate).execute(any());
+        order.verify(pageRepository).save(any());
+        order.verify(pageContentRepository).upsert(eq(42), any());
+        order.verify(indexWriter).write(3, 42, Map.of("дом", 2));
+        verify(invertedIndex).pageSaved(3);
+        // страница, проиндексированная вне обхода, не трогает время статуса сайта
+        verify(siteRepository, never()).updateStatusTime(anyInt(), any());
+        verify(siteRepository, never()).save(any());
+    }
+
+    @Test
+    void savesNewVersionUnderTemporaryPathUntilIndexIsWritten() {
+        when(pageRepository.save(any())).thenAnswer(invocation -> {
+            PageEntity page = invocation.getArgument(0);
+            assertEquals(PageBatchRepository.replacementPath(7), page.getPath());
+            page.setId(43);
+            return page;
+        });
+
+        pipeline.process(site, new FetchedPage("https://example.com/a", 200, "<html><body>дом</body></html>"),
+                "/a", 7);
+
+        verify(indexWriter).replace(3, 43, Map.of("дом", 2), 7, "/a");
+        verify(indexWriter, never()).write(anyInt(), anyInt(), anyMap());
+    }
+
+    @Test
+    void replacesPageEvenWhenNewVersionHasNoText() {
+        when(pageRepository.save(any())).thenAnswer(invocation -> {
+            PageEntity page = invocation.getArgument(0);
+            page.setId(44);
+            return page;
+        });
+
+        pipeline.process(site, new FetchedPage("https://example.com/a", 500, "<html><body>ошибка</body></html>"),
+                "/a", 7);
+
+        verify(indexWriter).replace(3, 44, Map.of(), 7, "/a");
+    }
+
+    @Test
+    void skipsDuplicatePageWithoutIndexing() {
+        when(pageRepository.save(any())).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+
+        pipeline.process(site, new FetchedPage("https://example.com/a", 200, "<html><body>дом</body></html>"), "/a");
+
+        verify(pageContentRepository, never()).upsert(anyInt(), any());
+        verify(invertedIndex, never()).pageSaved(anyInt());
+        verify(indexWriter, never()).write(anyInt(), anyInt(), anyMap());
+    }
+
+    @Test
+    void keepsTextOfErrorPagesOutOfIndex() {
+        when(pageRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        pipeline.process(site, new FetchedPage("https://example.com/missing", 404, "<html><body>нет</body></html>"),
+                "/missing");
+
+        verify(pageRepository).save(any());
+        verify(indexWriter, never()).write(anyInt(), anyInt(), anyMap());
+    }
+}
@@ -0,0 +1,58 @@
+package searchengine.services.pipeline;
+
+import org.junit.jupiter.api.Test;
+import searchengine.config.SitesList;
+import searchengine.repository.PageBatchRepository;
+import searchengine.services.impl.LemmaService;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PageStorageBackfillTest {
+
+    private final PageBatchRepository pageBatchRepository = mock(PageBatchRepository.class);
+    private final SitesList sitesList = new SitesList();
+
+    @Test
+    void keepsLegacyColumnUnlessDropIsEnabled() {
+        when(pageBatchRepository.hasLegacyContentColumn()).thenReturn(true);
+        when(pageBatchRepository.isLegacyContentNullable()).thenReturn(true);
+
+        backfill().startAsync();
+
+        verify(pageBatchRepository, timeout(2000)).findPagesWithoutText(anyInt(), anyInt(), any());
+        verify(pageBatchRepository).findPagesWithLegacyContent(anyInt(), anyInt(), any());
+        verify(pageBatchRepository, never()).makeLegacyContentNullable();
+        verify(pageBatchRepository, never()).dropLegacyContentColumn();
+    }
+
+    @Test
+    void dropsLegacyColumnWhenEnabled() {
+        sitesList.getPipeline().setDropLegacyContent(true);
+        when(pageBatchRepository.hasLegacyContentColumn()).thenReturn(true);
+
+        backfill().startAsync();
+
+        verify(pageBatchRepository, timeout(2000)).findPagesWithoutText(anyInt(), anyInt(), any());
+        verify(pageBatchRepository).makeLegacyContentNullable();
+        verify(pageBatchRepository).dropLegacyContentColumn();
+    }
+
+    @Test
+    void leavesSchemaAloneWithoutLegacyColumn() {
+        backfill().startAsync();
+
+        verify(pageBatchRepository, timeout(2000)).findPagesWithoutText(anyInt(), anyInt(), any());
+        verify(pageBatchRepository, never()).findPagesWithLegacyContent(anyInt(), anyInt(), any());
+        verify(pageBatchRepository, never()).dropLegacyContentColumn();
+    }
+
+    private PageStorageBackfill backfill() {
+        return new PageStorageBackfill(pageBatchRepository, mock(LemmaService.class), sitesList);
+    }
+}